@@ -0,0 +1,32 @@
+package cn.fww.icache.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @description: 依次以1、2、4...直到cpu核数的线程运行基准测试，并用gc profiler统计每次操作的内存分配
+ * @author: Wen
+ * @date: create in 2018/2/1 16:48
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*";
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads <<= 1) {
+            int current = Math.min(threads, maxThreads);
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(current)
+                    .addProfiler(GCProfiler.class)
+                    .build();
+            new Runner(options).run();
+            if (current == maxThreads) {
+                break;
+            }
+        }
+    }
+}
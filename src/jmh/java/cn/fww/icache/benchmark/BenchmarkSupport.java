@@ -0,0 +1,37 @@
+package cn.fww.icache.benchmark;
+
+import cn.fww.icache.InnerCacheTemplate;
+import cn.fww.icache.support.InProcessStringRedisTemplate;
+import cn.fww.icache.support.OfflineInnerCacheTemplate;
+
+/**
+ * @description: 基准测试公用的准备工作，进程内redis替身和不启动调度任务的模板在测试代码中
+ * @author: Wen
+ * @date: create in 2018/2/1 11:40
+ */
+public final class BenchmarkSupport {
+
+    public static final String VERSION_NAMESPACE = "icache:benchmark:version";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * 使用进程内redis替身、不启动调度任务的模板
+     *
+     * @return
+     */
+    public static InnerCacheTemplate newTemplate() {
+        return newTemplate(new InProcessStringRedisTemplate());
+    }
+
+    /**
+     * 使用指定redis替身、不启动调度任务的模板
+     *
+     * @param redisTemplate
+     * @return
+     */
+    public static InnerCacheTemplate newTemplate(InProcessStringRedisTemplate redisTemplate) {
+        return OfflineInnerCacheTemplate.create(redisTemplate, VERSION_NAMESPACE);
+    }
+}
@@ -0,0 +1,112 @@
+package cn.fww.icache.benchmark;
+
+import cn.fww.icache.InnerCacheTemplate;
+import cn.fww.icache.annotation.InnerCacheable;
+import cn.fww.icache.spring.InnerCacheBeanPostProcessor;
+import cn.fww.icache.spring.SpringExt;
+import cn.fww.icache.spring.interceptor.InnerCacheInterceptor;
+import cn.fww.icache.spring.interceptor.InnerCacheOperationSource;
+import cn.fww.icache.spring.interceptor.InnerCachePointcutAdvisor;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.aop.framework.autoproxy.DefaultAdvisorAutoProxyCreator;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @description: 经过代理的InnerCacheable方法的命中与未命中基准，覆盖key计算、拦截器和缓存读写的完整开销
+ * @author: Wen
+ * @date: create in 2018/2/1 15:30
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheableBenchmark {
+
+    private static final int ITEMS = 1 << 16;
+    private static final int MASK = (1 << 20) - 1;
+
+    private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    private AnnotationConfigApplicationContext context;
+    private CacheableService service;
+    private int[] indexes;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int index = ThreadLocalRandom.current().nextInt();
+        /**
+         * 每个线程使用不重叠的id，保证一直未命中
+         */
+        int missId = ITEMS + (THREAD_IDS.getAndIncrement() << 24);
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new AnnotationConfigApplicationContext(BenchmarkConfig.class);
+        service = context.getBean(CacheableService.class);
+        for (int i = 0; i < ITEMS; i++) {
+            service.find(i);
+        }
+        indexes = distribution.indexes(ITEMS, MASK + 1, 20180201L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object hit(ThreadState state) {
+        return service.find(indexes[state.index++ & MASK]);
+    }
+
+    @Benchmark
+    public Object miss(ThreadState state) {
+        return service.find(state.missId++);
+    }
+
+    public static class CacheableService {
+        @InnerCacheable(keyName = "'cacheable:' + #p0")
+        public Integer find(int id) {
+            return id;
+        }
+    }
+
+    @Configuration
+    @Import({SpringExt.class, InnerCacheOperationSource.class, InnerCacheInterceptor.class,
+            InnerCachePointcutAdvisor.class})
+    public static class BenchmarkConfig {
+
+        @Bean
+        public static DefaultAdvisorAutoProxyCreator advisorAutoProxyCreator() {
+            return new DefaultAdvisorAutoProxyCreator();
+        }
+
+        @Bean
+        public static InnerCacheBeanPostProcessor innerCacheBeanPostProcessor() {
+            return new InnerCacheBeanPostProcessor();
+        }
+
+        @Bean
+        public InnerCacheTemplate innerCacheTemplate() {
+            return BenchmarkSupport.newTemplate();
+        }
+
+        @Bean
+        public CacheableService cacheableService() {
+            return new CacheableService();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package cn.fww.icache.benchmark;
+
+import cn.fww.icache.codec.BinaryCodec;
+import cn.fww.icache.codec.Codec;
+import cn.fww.icache.codec.JdkCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description: 编解码器基准，比较二进制编解码器与java序列化的编码、解码耗时，序列化后的大小在准备阶段打印
+ * @author: Wen
+ * @date: create in 2018/2/12 16:30
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    public enum CodecType {
+        JDK {
+            @Override
+            Codec create() {
+                return new JdkCodec();
+            }
+        },
+        BINARY {
+            @Override
+            Codec create() {
+                return new BinaryCodec().register(Item.class, 1);
+            }
+        };
+
+        abstract Codec create();
+    }
+
+    public enum Payload {
+        STRING {
+            @Override
+            Object create() {
+                return "icache-benchmark-中文-value-0123456789";
+            }
+        },
+        LIST {
+            @Override
+            Object create() {
+                List<Integer> list = new ArrayList<>();
+                for (int i = 0; i < 100; i++) {
+                    list.add(i * 31);
+                }
+                return list;
+            }
+        },
+        MAP {
+            @Override
+            Object create() {
+                Map<String, Long> map = new HashMap<>();
+                for (int i = 0; i < 50; i++) {
+                    map.put("key" + i, (long) i * 1000);
+                }
+                return map;
+            }
+        },
+        POJO {
+            @Override
+            Object create() {
+                List<Item> items = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                    items.add(new Item(i, "item" + i, i * 1.5d, i % 2 == 0));
+                }
+                return items;
+            }
+        };
+
+        abstract Object create();
+    }
+
+    public static class Item implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private long id;
+        private String name;
+        private double price;
+        private boolean active;
+        private ArrayList<String> tags = new ArrayList<>();
+
+        public Item() {
+        }
+
+        Item(long id, String name, double price, boolean active) {
+            this.id = id;
+            this.name = name;
+            this.price = price;
+            this.active = active;
+            this.tags.add("tag" + (id % 3));
+        }
+    }
+
+    @Param({"JDK", "BINARY"})
+    CodecType codecType;
+
+    @Param({"STRING", "LIST", "MAP", "POJO"})
+    Payload payload;
+
+    private Codec codec;
+    private Object value;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        codec = codecType.create();
+        value = payload.create();
+        encoded = codec.encode(value);
+        System.out.println(codecType + " " + payload + " serialized size: " + encoded.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(value);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return codec.decode(encoded, 0, encoded.length);
+    }
+}
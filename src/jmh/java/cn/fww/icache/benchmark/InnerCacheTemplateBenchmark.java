@@ -0,0 +1,70 @@
+package cn.fww.icache.benchmark;
+
+import cn.fww.icache.InnerCacheTemplate;
+import cn.fww.icache.StorageMode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description: InnerCacheTemplate的get/put基准，比较带版本与不带版本的key、均匀与zipfian分布、堆上与堆外存储
+ * @author: Wen
+ * @date: create in 2018/2/1 14:15
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InnerCacheTemplateBenchmark {
+
+    private static final int ITEMS = 1 << 16;
+    private static final int MASK = (1 << 20) - 1;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"false", "true"})
+    boolean versioned;
+
+    @Param({"HEAP", "OFF_HEAP"})
+    StorageMode storageMode;
+
+    private InnerCacheTemplate template;
+    private String[] keys;
+    private Integer[] values;
+    private int[] indexes;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int index = ThreadLocalRandom.current().nextInt();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        template = BenchmarkSupport.newTemplate();
+        template.setStorageMode(storageMode);
+        template.afterPropertiesSet();
+        keys = new String[ITEMS];
+        values = new Integer[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            keys[i] = "template:" + i;
+            values[i] = i;
+            template.put(keys[i], values[i], versioned);
+        }
+        indexes = distribution.indexes(ITEMS, MASK + 1, 20180201L);
+    }
+
+    @Benchmark
+    public Object get(ThreadState state) {
+        return template.get(keys[indexes[state.index++ & MASK]]);
+    }
+
+    @Benchmark
+    public boolean put(ThreadState state) {
+        int i = indexes[state.index++ & MASK];
+        return template.put(keys[i], values[i], versioned);
+    }
+}
@@ -0,0 +1,74 @@
+package cn.fww.icache.benchmark;
+
+import java.util.Random;
+
+/**
+ * @description: 基准测试的key分布，预先生成访问下标，测试时只做数组读取
+ * @author: Wen
+ * @date: create in 2018/2/1 11:02
+ */
+public enum KeyDistribution {
+
+    /**
+     * 均匀分布
+     */
+    UNIFORM {
+        @Override
+        public int[] indexes(int items, int length, long seed) {
+            Random random = new Random(seed);
+            int[] indexes = new int[length];
+            for (int i = 0; i < length; i++) {
+                indexes[i] = random.nextInt(items);
+            }
+            return indexes;
+        }
+    },
+    /**
+     * zipfian分布(theta=0.99)，热点打散到整个key空间
+     */
+    ZIPFIAN {
+        @Override
+        public int[] indexes(int items, int length, long seed) {
+            double theta = 0.99d;
+            double zetan = 0;
+            for (int i = 1; i <= items; i++) {
+                zetan += 1 / Math.pow(i, theta);
+            }
+            double zeta2 = 1 + 1 / Math.pow(2, theta);
+            double alpha = 1 / (1 - theta);
+            double eta = (1 - Math.pow(2d / items, 1 - theta)) / (1 - zeta2 / zetan);
+            Random random = new Random(seed);
+            int[] indexes = new int[length];
+            for (int i = 0; i < length; i++) {
+                double u = random.nextDouble();
+                double uz = u * zetan;
+                long rank;
+                if (uz < 1) {
+                    rank = 0;
+                } else if (uz < zeta2) {
+                    rank = 1;
+                } else {
+                    rank = (long) (items * Math.pow(eta * u - eta + 1, alpha));
+                }
+                indexes[i] = scramble(rank, items);
+            }
+            return indexes;
+        }
+    };
+
+    /**
+     * 生成访问下标
+     *
+     * @param items  key数量
+     * @param length 下标数量
+     * @param seed
+     * @return
+     */
+    public abstract int[] indexes(int items, int length, long seed);
+
+    private static int scramble(long rank, int items) {
+        long h = rank * 0x9E3779B97F4A7C15L;
+        h ^= (h >>> 32);
+        return (int) ((h & Long.MAX_VALUE) % items);
+    }
+}
@@ -0,0 +1,66 @@
+package cn.fww.icache.benchmark;
+
+import cn.fww.icache.InnerCacheTemplate;
+import cn.fww.icache.support.InProcessStringRedisTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description: 定时版本检查中redis数据存在性检查的基准，比较逐个检查与分批管道检查。
+ * redis替身模拟每次往返的耗时，结果里的耗时基本等于往返次数乘以往返耗时。
+ * @author: Wen
+ * @date: create in 2018/2/8 11:30
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(1)
+public class VersionCheckBenchmark {
+
+    private static final int KEYS = 2000;
+
+    @Param({"1", "50", "200"})
+    int batchSize;
+
+    @Param({"100"})
+    long roundTripMicros;
+
+    private InnerCacheTemplate template;
+    private List<String> keys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        InProcessStringRedisTemplate redisTemplate = new InProcessStringRedisTemplate();
+        redisTemplate.setRoundTripMicros(roundTripMicros);
+        template = BenchmarkSupport.newTemplate(redisTemplate);
+        template.setExistCheckBatchSize(batchSize);
+        keys = new ArrayList<>(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            String key = "check:" + i;
+            keys.add(key);
+            // 一半的key在redis中有数据
+            if ((i & 1) == 0) {
+                redisTemplate.opsForHash().put(key, "v", "1");
+            }
+        }
+    }
+
+    @Benchmark
+    public int findMissing() {
+        long start = System.nanoTime();
+        int missing = template.findMissingRedisCache(keys).size();
+        template.recordVersionCheck(System.nanoTime() - start, keys.size());
+        return missing;
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.println(template.getVersionCheckStats());
+    }
+}
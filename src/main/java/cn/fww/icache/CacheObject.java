@@ -10,8 +10,48 @@ import java.io.Serializable;
 public class CacheObject implements Serializable {
 
     private static final long serialVersionUID = 780809354027063160L;
+    /**
+     * 不带版本的缓存
+     */
+    public static final long NO_VERSION = -1L;
     private Object obj;
     private long expireTime;
+    /**
+     * 写入时的版本号，版本更新时不一致的数据会被作废
+     */
+    private long version = NO_VERSION;
+
+    /**
+     * 以下为淘汰策略和时间轮使用的链接信息，只在淘汰锁内修改，不参与序列化
+     */
+    transient String key;
+    /**
+     * 权重，写入时确定，之后不再改变
+     */
+    transient int weight = 1;
+    /**
+     * 写入时间，用于判断是否需要提前刷新
+     */
+    transient long writeTime;
+    /**
+     * 版本更新后继续使用旧值时，开始过时的时间，0为未过时
+     */
+    transient volatile long staleSince;
+    transient int queueType;
+    transient CacheObject prevInAccessOrder;
+    transient CacheObject nextInAccessOrder;
+    transient CacheObject prevInTimerOrder;
+    transient CacheObject nextInTimerOrder;
+
+    /**
+     * 释放值占用的堆外内存，只在数据被淘汰策略移除时调用
+     */
+    void releaseValue() {
+        if (obj instanceof OffHeapValue) {
+            OffHeapValue offHeapValue = (OffHeapValue) obj;
+            offHeapValue.slab.store.release(offHeapValue);
+        }
+    }
 
     public Object getObj() {
         return obj;
@@ -28,4 +68,12 @@ public class CacheObject implements Serializable {
     public void setExpireTime(long expireTime) {
         this.expireTime = expireTime;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
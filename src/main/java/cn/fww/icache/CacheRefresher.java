@@ -0,0 +1,90 @@
+package cn.fww.icache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @description: 提前刷新的线程池。同一区域的同一个key同时只有一个刷新任务，队列满时放弃刷新，继续使用当前值；
+ * 线程为守护线程，空闲时回收
+ * @author: Wen
+ * @date: create in 2018/2/21 11:05
+ */
+public class CacheRefresher {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheRefresher.class);
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 正在刷新的key
+     */
+    private final ConcurrentHashMap<String, Boolean> refreshingKeys = new ConcurrentHashMap<>();
+
+    /**
+     * @param threads   刷新线程数
+     * @param queueSize 等待执行的刷新任务上限
+     */
+    public CacheRefresher(int threads, int queueSize) {
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "icache-refresh-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 异步执行刷新任务
+     *
+     * @param region 统计记在该区域
+     * @param key
+     * @param task   重新加载并写入缓存
+     * @return 是否提交了任务
+     */
+    public boolean refresh(String region, String key, final Runnable task) {
+        final String refreshKey = InnerCache.regionKey(region, key);
+        if (refreshingKeys.putIfAbsent(refreshKey, Boolean.TRUE) != null) {
+            return false;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        refreshingKeys.remove(refreshKey);
+                    }
+                }
+            });
+            InnerCache.region(region).getStats().recordRefresh(true);
+            return true;
+        } catch (RejectedExecutionException e) {
+            refreshingKeys.remove(refreshKey);
+            InnerCache.region(region).getStats().recordRefresh(false);
+            logger.debug("刷新队列已满，继续使用当前值。key={}", key);
+            return false;
+        }
+    }
+
+    /**
+     * 停止刷新线程，放弃等待中的任务
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
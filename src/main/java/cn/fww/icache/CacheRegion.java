@@ -0,0 +1,346 @@
+package cn.fww.icache;
+
+import cn.fww.icache.common.SystemClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @description: 缓存区域。每个区域有自己的数据、容量、默认ttl、淘汰策略、存放方式和统计信息，
+ * 大的初始化字典和小的按用户查询的数据放在不同区域，不再争抢同一份容量。
+ * 容量可以按数据量或按权重(估算的字节数)限制，按权重时写入时计算每条数据的权重，堆外的值按编码后的长度计。
+ * 版本号是全局的(与redis中的命名空间对应)，不属于区域。
+ * @author: Wen
+ * @date: create in 2018/2/16 10:30
+ */
+public class CacheRegion {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheRegion.class);
+
+    private final String name;
+    private final int defaultTtl;
+    private final long maximumSize;
+    private final long maximumWeight;
+    /**
+     * 按权重限制时的权重计算，按数据量限制时为null
+     */
+    private final Weigher weigher;
+    private final EvictionPolicy evictionPolicy;
+
+    private final ConcurrentHashMap<String, CacheObject> data = new ConcurrentHashMap<>();
+    private final CacheStats stats = new CacheStats();
+    private final WindowTinyLfuPolicy policy;
+    /**
+     * 堆外存储，为null时值放在堆上
+     */
+    private final OffHeapStore offHeapStore;
+    /**
+     * 磁盘溢出层，为null时被淘汰的数据直接丢弃
+     */
+    private final DiskStore diskStore;
+
+    CacheRegion(CacheRegionConfig config, OffHeapStore offHeapStore, DiskStore diskStore) {
+        this.name = config.getName();
+        this.defaultTtl = config.getTtl();
+        this.maximumSize = config.getMaximumSize();
+        this.maximumWeight = config.getMaximumWeight();
+        this.weigher = maximumWeight > 0 ? (config.getWeigher() != null ? config.getWeigher() : new DefaultWeigher()) : null;
+        this.evictionPolicy = config.getEvictionPolicy();
+        // LRU即整个区域都是窗口，没有按频率准入
+        double percentWindow = evictionPolicy == EvictionPolicy.LRU ? 1.0d : WindowTinyLfuPolicy.PERCENT_WINDOW;
+        this.policy = new WindowTinyLfuPolicy(maximumWeight > 0 ? maximumWeight : maximumSize, percentWindow, data, stats);
+        this.offHeapStore = offHeapStore;
+        this.diskStore = diskStore;
+        if (diskStore != null) {
+            diskStore.bind(data);
+            policy.setEvictionListener(diskStore);
+        }
+    }
+
+    /**
+     * 添加缓存
+     *
+     * @param key
+     * @param value
+     * @param ttl     -1时使用区域的默认ttl
+     * @param version 写入时的版本号，不带版本为{@link CacheObject#NO_VERSION}
+     * @return
+     */
+    boolean put(String key, Object value, int ttl, long version) {
+        try {
+            if (ttl == -1) {
+                ttl = defaultTtl;
+            }
+            long timeStamp = SystemClock.now();
+            CacheObject cacheObject = new CacheObject();
+            cacheObject.key = key;
+            cacheObject.writeTime = timeStamp;
+            // 先算权重再写堆外，权重计算失败时不会占用堆外空间
+            int weight = weigher != null ? Math.max(0, weigher.weigh(key, value)) : 1;
+            Object stored = storeValue(value);
+            if (weigher != null && stored instanceof OffHeapValue) {
+                weight = ((OffHeapValue) stored).length;
+            }
+            cacheObject.weight = weight;
+            cacheObject.setObj(stored);
+            cacheObject.setVersion(version);
+            cacheObject.setExpireTime(ttl == -1 ? ttl : timeStamp + ttl);
+            CacheObject old = data.put(key, cacheObject);
+            // 一级缓存有了新值，磁盘上的旧数据作废
+            if (diskStore != null) {
+                diskStore.remove(key);
+            }
+            if (value == NullValue.INSTANCE) {
+                stats.recordNullPut();
+            }
+            // 超过容量时由淘汰策略挑选数据移除
+            policy.afterWrite(cacheObject, old);
+            // 写入期间版本被更新了，作废刚写入的数据(与updateVersion配合，保证读取时无需再比较版本)
+            if (version != InnerCache.currentVersion(key)) {
+                if (data.remove(key, cacheObject)) {
+                    policy.afterRemove(cacheObject);
+                }
+                return false;
+            }
+            return true;
+        } catch (Exception e) {
+            logger.error("添加内部缓存出错。region={}", name, e);
+            return false;
+        }
+    }
+
+    /**
+     * 获取缓存数据，已过期的数据按未命中处理；缓存的null结果返回{@link NullValue#INSTANCE}。
+     * 版本更新时旧版本数据已被作废，这里只需一次查找，不再查询版本号
+     *
+     * @param key
+     * @return
+     */
+    Object get(String key) {
+        CacheObject cacheObject = data.get(key);
+        if (cacheObject == null) {
+            Object value = loadFromDisk(key);
+            stats.recordLookup(value != null);
+            return value;
+        }
+        long expireTime = cacheObject.getExpireTime();
+        if (expireTime > 0 && SystemClock.now() >= expireTime) {
+            // 条件删除，避免误删其他线程刚放入的新值
+            if (data.remove(key, cacheObject)) {
+                policy.afterRemove(cacheObject);
+                stats.recordExpiration();
+            }
+            stats.recordLookup(false);
+            return null;
+        }
+        long staleSince = cacheObject.staleSince;
+        long staleMillis = 0;
+        if (staleSince != 0) {
+            // 版本已更新，新值加载完成前在过时窗口内继续返回旧值
+            staleMillis = SystemClock.now() - staleSince;
+            if (staleMillis >= InnerCache.getMaxStaleness()) {
+                if (data.remove(key, cacheObject)) {
+                    policy.afterRemove(cacheObject);
+                    stats.recordStaleDrop();
+                }
+                stats.recordLookup(false);
+                return null;
+            }
+        }
+        policy.afterRead(cacheObject);
+        Object obj = cacheObject.getObj();
+        if (obj instanceof OffHeapValue) {
+            OffHeapValue offHeapValue = (OffHeapValue) obj;
+            obj = offHeapValue.slab.store.load(offHeapValue);
+            // 读取时刚好被移除
+            if (obj == null) {
+                stats.recordLookup(false);
+                return null;
+            }
+        }
+        if (obj == NullValue.INSTANCE) {
+            stats.recordNullHit();
+        }
+        if (staleSince != 0) {
+            stats.recordStaleRead(staleMillis);
+        }
+        stats.recordLookup(true);
+        return obj;
+    }
+
+    /**
+     * 数据是否需要刷新：已过时(版本已更新)，或写入后已超过刷新时间
+     *
+     * @param key
+     * @param refreshAfter 写入多久后需要刷新(毫秒)，小于等于0时只看是否过时
+     * @return 没有数据时返回false
+     */
+    boolean needsRefresh(String key, long refreshAfter) {
+        CacheObject cacheObject = data.get(key);
+        if (cacheObject == null) {
+            return false;
+        }
+        return cacheObject.staleSince != 0
+                || (refreshAfter > 0 && SystemClock.now() - cacheObject.writeTime >= refreshAfter);
+    }
+
+    /**
+     * 一级缓存未命中时查磁盘溢出层，命中且版本仍有效时提升回一级缓存
+     */
+    private Object loadFromDisk(String key) {
+        if (diskStore == null) {
+            return null;
+        }
+        CacheObject cacheObject = diskStore.get(key);
+        if (cacheObject == null) {
+            return null;
+        }
+        long version = cacheObject.getVersion();
+        if (version != CacheObject.NO_VERSION && version != InnerCache.currentVersion(key)) {
+            diskStore.remove(key);
+            return null;
+        }
+        long expireTime = cacheObject.getExpireTime();
+        int ttl = expireTime > 0 ? (int) Math.max(1, expireTime - SystemClock.now()) : -1;
+        Object obj = cacheObject.getObj();
+        // 写入一级缓存时会删除磁盘上的数据
+        put(key, obj, ttl, version);
+        if (obj == NullValue.INSTANCE) {
+            stats.recordNullHit();
+        }
+        return obj;
+    }
+
+    /**
+     * 启用堆外存储时把值写到堆外，放不下的仍放在堆上
+     */
+    private Object storeValue(Object value) {
+        if (offHeapStore == null || value == NullValue.INSTANCE) {
+            return value;
+        }
+        OffHeapValue offHeapValue = offHeapStore.store(value);
+        return offHeapValue != null ? offHeapValue : value;
+    }
+
+    /**
+     * 删除缓存(包括磁盘溢出层中的数据)
+     *
+     * @param key
+     */
+    void remove(String key) {
+        CacheObject old = data.remove(key);
+        if (old != null) {
+            policy.afterRemove(old);
+        }
+        if (diskStore != null) {
+            diskStore.remove(key);
+        }
+    }
+
+    /**
+     * 作废与当前版本不一致的数据。设置了过时窗口时不删除，只标记为过时，
+     * 新值写入时整条替换；已标记的数据不重新计时，旧值最多使用一个窗口
+     *
+     * @param key
+     * @param version
+     */
+    void invalidateStale(String key, long version) {
+        CacheObject cacheObject = data.get(key);
+        if (InnerCache.getMaxStaleness() > 0) {
+            if (cacheObject != null && cacheObject.getVersion() != version && cacheObject.staleSince == 0) {
+                cacheObject.staleSince = SystemClock.now();
+            }
+            return;
+        }
+        while (cacheObject != null && cacheObject.getVersion() != version) {
+            if (data.remove(key, cacheObject)) {
+                policy.afterRemove(cacheObject);
+                break;
+            }
+            cacheObject = data.get(key);
+        }
+    }
+
+    /**
+     * 推进过期时间轮，删除到期的缓存
+     */
+    void expireEntries() {
+        policy.expireEntries(SystemClock.now());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getDefaultTtl() {
+        return defaultTtl;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return 按数据量限制时为0
+     */
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * 当前的权重总和，按数据量限制时即数据量
+     *
+     * @return
+     */
+    public long getWeightedSize() {
+        return policy.weightedSize();
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * 当前数据量
+     *
+     * @return
+     */
+    public long size() {
+        return data.size();
+    }
+
+    /**
+     * 区域的全部数据(启用堆外存储时值为堆外索引，读取数据请用get)
+     *
+     * @return
+     */
+    public ConcurrentHashMap<String, CacheObject> getAll() {
+        return data;
+    }
+
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return 没有启用时返回null
+     */
+    public OffHeapStore getOffHeapStore() {
+        return offHeapStore;
+    }
+
+    /**
+     * @return 没有启用时返回null
+     */
+    public DiskStore getDiskStore() {
+        return diskStore;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheRegion{name=" + name + ", size=" + data.size() + ", maximumSize=" + maximumSize
+                + ", maximumWeight=" + maximumWeight
+                + ", evictionPolicy=" + evictionPolicy + ", stats=" + stats + "}";
+    }
+}
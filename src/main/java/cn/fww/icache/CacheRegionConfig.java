@@ -0,0 +1,118 @@
+package cn.fww.icache;
+
+/**
+ * @description: 缓存区域的配置，在InnerCacheTemplate中按名称配置，注解通过region属性选择区域
+ * @author: Wen
+ * @date: create in 2018/2/16 10:12
+ */
+public class CacheRegionConfig {
+
+    private String name;
+    /**
+     * 最多缓存多少数据
+     */
+    private long maximumSize = 100000;
+    /**
+     * 按权重(估算的字节数)限制容量，大于0时代替maximumSize
+     */
+    private long maximumWeight = 0;
+    /**
+     * 权重计算，为null时使用{@link DefaultWeigher}
+     */
+    private Weigher weigher;
+    /**
+     * 写入时没有指定ttl(-1)的数据的缓存时间(毫秒)，-1为随应用的生命周期
+     */
+    private int ttl = -1;
+
+    private EvictionPolicy evictionPolicy = EvictionPolicy.TINY_LFU;
+
+    private StorageMode storageMode = StorageMode.HEAP;
+    /**
+     * 堆外存储时的堆外内存上限(字节)
+     */
+    private long offHeapCapacity = 256L * 1024 * 1024;
+    /**
+     * 被淘汰的数据是否写入磁盘溢出层
+     */
+    private boolean diskOverflowEnabled = false;
+
+    public CacheRegionConfig() {
+    }
+
+    public CacheRegionConfig(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public void setMaximumWeight(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+    }
+
+    public Weigher getWeigher() {
+        return weigher;
+    }
+
+    public void setWeigher(Weigher weigher) {
+        this.weigher = weigher;
+    }
+
+    public int getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(int ttl) {
+        this.ttl = ttl;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    public void setStorageMode(StorageMode storageMode) {
+        this.storageMode = storageMode;
+    }
+
+    public long getOffHeapCapacity() {
+        return offHeapCapacity;
+    }
+
+    public void setOffHeapCapacity(long offHeapCapacity) {
+        this.offHeapCapacity = offHeapCapacity;
+    }
+
+    public boolean isDiskOverflowEnabled() {
+        return diskOverflowEnabled;
+    }
+
+    public void setDiskOverflowEnabled(boolean diskOverflowEnabled) {
+        this.diskOverflowEnabled = diskOverflowEnabled;
+    }
+}
@@ -0,0 +1,389 @@
+package cn.fww.icache;
+
+import cn.fww.icache.codec.Codec;
+import cn.fww.icache.codec.CodecException;
+import cn.fww.icache.common.SystemClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * @description: 本地缓存快照，用于重启后预热。定时及关闭时把版本号和缓存数据流式写入临时文件，写完后改名替换旧快照；
+ * 启动时内存映射读取快照，过期的数据跳过，版本号与redis不一致的数据丢弃。
+ * 文件格式：魔数(4) + 格式版本(1) + 写入时间(8)，之后每条记录为 长度(4) + CRC32(4) + 记录体，
+ * 记录体第一个字节为类型(版本号、区域、缓存数据、结束)，区域记录之后的缓存数据属于该区域(没有区域记录时为默认区域)，
+ * 结束记录带有前面的记录数，没有结束记录的快照视为不完整，只加载校验通过的部分。
+ * 值用缓存的编解码器编码，无法编码的值不写入快照。
+ * 快照文件旁的.lock文件由使用快照的进程独占，避免多个进程互相覆盖同一个快照。
+ * @author: Wen
+ * @date: create in 2018/2/15 10:20
+ */
+public class CacheSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheSnapshot.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x49435331;
+    private static final byte FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 13;
+
+    private static final byte TYPE_VERSION = 1;
+    private static final byte TYPE_ENTRY = 2;
+    private static final byte TYPE_END = 3;
+    private static final byte TYPE_REGION = 4;
+
+    private final Codec codec;
+    private final File file;
+
+    private FileChannel lockChannel;
+    private FileLock lock;
+
+    private volatile long lastWriteMillis;
+    private volatile long lastWriteCount;
+    private volatile long lastLoadMillis;
+    private volatile long lastLoadCount;
+    private volatile long lastDiscardCount;
+    private volatile long lastExpiredCount;
+
+    /**
+     * @param codec 值的编解码器
+     * @param file  快照文件
+     */
+    public CacheSnapshot(Codec codec, File file) {
+        this.codec = codec;
+        this.file = file;
+    }
+
+    /**
+     * 独占快照文件，直到{@link #close()}或进程退出
+     *
+     * @return 快照正被其他进程使用时返回false
+     * @throws IOException
+     */
+    public synchronized boolean tryLock() throws IOException {
+        if (lock != null) {
+            return true;
+        }
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建快照目录" + directory);
+        }
+        FileChannel channel = new RandomAccessFile(file.getPath() + ".lock", "rw").getChannel();
+        FileLock fileLock;
+        try {
+            fileLock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            channel.close();
+            return false;
+        }
+        lockChannel = channel;
+        lock = fileLock;
+        return true;
+    }
+
+    /**
+     * 释放快照文件
+     */
+    public synchronized void close() {
+        if (lock == null) {
+            return;
+        }
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            logger.warn("释放缓存快照{}失败", file, e);
+        }
+        lock = null;
+        lockChannel = null;
+    }
+
+    /**
+     * 写入快照，先写临时文件再改名，写入失败时保留旧快照
+     *
+     * @throws IOException
+     */
+    public synchronized void write() throws IOException {
+        long start = System.nanoTime();
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建快照目录" + directory);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        long versionCount = 0;
+        long entryCount = 0;
+        RecordWriter writer = new RecordWriter(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024)));
+        try {
+            writer.out.writeInt(MAGIC);
+            writer.out.writeByte(FORMAT_VERSION);
+            writer.out.writeLong(System.currentTimeMillis());
+            for (Map.Entry<String, Long> e : InnerCache.getCacheVersionMap().entrySet()) {
+                DataOutputStream body = writer.begin(TYPE_VERSION);
+                writeKey(body, e.getKey());
+                body.writeLong(e.getValue());
+                writer.end();
+                versionCount++;
+            }
+            long now = SystemClock.now();
+            for (CacheRegion region : InnerCache.getRegions()) {
+                DataOutputStream regionBody = writer.begin(TYPE_REGION);
+                writeKey(regionBody, region.getName());
+                writer.end();
+                for (Map.Entry<String, CacheObject> e : region.getAll().entrySet()) {
+                    CacheObject cacheObject = e.getValue();
+                    long expireTime = cacheObject.getExpireTime();
+                    if (expireTime > 0 && now >= expireTime) {
+                        continue;
+                    }
+                    byte[] value = encode(cacheObject.getObj());
+                    if (value == null) {
+                        continue;
+                    }
+                    DataOutputStream body = writer.begin(TYPE_ENTRY);
+                    writeKey(body, e.getKey());
+                    body.writeLong(cacheObject.getVersion());
+                    body.writeLong(expireTime);
+                    body.write(value);
+                    writer.end();
+                    entryCount++;
+                }
+            }
+            DataOutputStream body = writer.begin(TYPE_END);
+            body.writeLong(versionCount);
+            body.writeLong(entryCount);
+            writer.end();
+        } finally {
+            writer.out.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastWriteMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        lastWriteCount = entryCount;
+        logger.info("写入缓存快照{}，{}个版本号，{}条数据，耗时{}ms", file, versionCount, entryCount, lastWriteMillis);
+    }
+
+    /**
+     * 加载快照。版本号在写入数据前处理：redis的版本号已加载时以redis为准，否则先使用快照中的版本号，由定时检查再同步
+     *
+     * @param versionsLoaded 是否已从redis加载了版本号
+     * @return 加载的数据量
+     * @throws IOException
+     */
+    public synchronized long load(boolean versionsLoaded) throws IOException {
+        long start = System.nanoTime();
+        long loaded = 0;
+        long discarded = 0;
+        long expired = 0;
+        if (!file.isFile()) {
+            logger.info("没有缓存快照{}，冷启动", file);
+            return 0;
+        }
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("缓存快照超过2GB，无法加载");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < FILE_HEADER_SIZE || buffer.getInt() != MAGIC || buffer.get() != FORMAT_VERSION) {
+            logger.warn("缓存快照{}格式不正确，忽略", file);
+            return 0;
+        }
+        long createTime = buffer.getLong();
+        boolean complete = false;
+        CRC32 crc = new CRC32();
+        // 快照中的区域已不再配置时跳过其数据
+        CacheRegion region = InnerCache.getRegion(InnerCache.DEFAULT_REGION);
+        try {
+            while (buffer.hasRemaining()) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                buffer.get(body);
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    logger.warn("缓存快照记录校验失败，停止加载");
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.wrap(body);
+                byte type = record.get();
+                if (type == TYPE_VERSION) {
+                    String key = readKey(record);
+                    long version = record.getLong();
+                    if (!versionsLoaded) {
+                        InnerCache.putToVersionIfAbsent(key, version);
+                    }
+                } else if (type == TYPE_REGION) {
+                    region = InnerCache.getRegion(readKey(record));
+                } else if (type == TYPE_ENTRY) {
+                    if (region == null) {
+                        discarded++;
+                        continue;
+                    }
+                    String key = readKey(record);
+                    long version = record.getLong();
+                    long expireTime = record.getLong();
+                    long now = SystemClock.now();
+                    if (expireTime > 0 && now >= expireTime) {
+                        expired++;
+                        continue;
+                    }
+                    if (version != CacheObject.NO_VERSION) {
+                        Long current = InnerCache.getVersion(key);
+                        if (current == null || current != version) {
+                            discarded++;
+                            continue;
+                        }
+                    }
+                    Object value;
+                    try {
+                        value = codec.decode(body, record.position(), record.remaining());
+                    } catch (CodecException e) {
+                        discarded++;
+                        continue;
+                    }
+                    int ttl = expireTime > 0 ? (int) Math.max(1, expireTime - now) : -1;
+                    if (region.put(key, value, ttl, version)) {
+                        loaded++;
+                    }
+                } else if (type == TYPE_END) {
+                    complete = true;
+                    break;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            logger.warn("缓存快照{}被截断", file);
+        }
+        if (!complete) {
+            logger.warn("缓存快照{}不完整，只加载了校验通过的部分", file);
+        }
+        lastLoadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        lastLoadCount = loaded;
+        lastDiscardCount = discarded;
+        lastExpiredCount = expired;
+        logger.info("加载{}时写入的缓存快照，{}条数据，丢弃版本不一致的{}条，跳过过期的{}条，耗时{}ms",
+                createTime, loaded, discarded, expired, lastLoadMillis);
+        return loaded;
+    }
+
+    private byte[] encode(Object value) {
+        if (value instanceof OffHeapValue) {
+            // 堆外的值已经编码过，直接复制
+            OffHeapValue offHeapValue = (OffHeapValue) value;
+            return offHeapValue.slab.store.copyBytes(offHeapValue);
+        }
+        try {
+            return codec.encode(value);
+        } catch (CodecException e) {
+            logger.debug("值无法编码，不写入快照。{}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeKey(DataOutputStream out, String key) throws IOException {
+        byte[] bytes = key.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readKey(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String key = new String(buffer.array(), buffer.position(), length, UTF_8);
+        buffer.position(buffer.position() + length);
+        return key;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getLastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    public long getLastWriteCount() {
+        return lastWriteCount;
+    }
+
+    /**
+     * 启动时加载快照的耗时，即从启动到预热完成的时间
+     *
+     * @return
+     */
+    public long getLastLoadMillis() {
+        return lastLoadMillis;
+    }
+
+    public long getLastLoadCount() {
+        return lastLoadCount;
+    }
+
+    /**
+     * 加载时因版本不一致、无法解码或区域已不存在丢弃的数据量
+     *
+     * @return
+     */
+    public long getLastDiscardCount() {
+        return lastDiscardCount;
+    }
+
+    public long getLastExpiredCount() {
+        return lastExpiredCount;
+    }
+
+    /**
+     * 逐条写入记录：记录体先写到缓冲区，算出长度和CRC后再写到文件
+     */
+    private static final class RecordWriter {
+        final DataOutputStream out;
+        final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(256);
+        final DataOutputStream body = new DataOutputStream(bodyBytes);
+        final CRC32 crc = new CRC32();
+
+        RecordWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        DataOutputStream begin(byte type) throws IOException {
+            bodyBytes.reset();
+            body.writeByte(type);
+            return body;
+        }
+
+        void end() throws IOException {
+            body.flush();
+            byte[] bytes = bodyBytes.toByteArray();
+            crc.reset();
+            crc.update(bytes);
+            out.writeInt(bytes.length);
+            out.writeInt((int) crc.getValue());
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package cn.fww.icache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @description: 缓存统计信息
+ * @author: Wen
+ * @date: create in 2018/1/15 17:32
+ */
+public class CacheStats {
+
+    /**
+     * 命中、未命中的数量
+     */
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    /**
+     * 因容量限制被淘汰的数量
+     */
+    private final AtomicLong evictionCount = new AtomicLong();
+    /**
+     * 因过期被删除的数量
+     */
+    private final AtomicLong expirationCount = new AtomicLong();
+    /**
+     * 写入的null占位数量
+     */
+    private final AtomicLong nullPutCount = new AtomicLong();
+    /**
+     * 命中null占位的数量
+     */
+    private final AtomicLong nullHitCount = new AtomicLong();
+    /**
+     * 二级缓存命中、未命中、写入的数量
+     */
+    private final AtomicLong l2HitCount = new AtomicLong();
+    private final AtomicLong l2MissCount = new AtomicLong();
+    private final AtomicLong l2PutCount = new AtomicLong();
+    /**
+     * 提前刷新的次数，以及因刷新队列满而放弃的次数
+     */
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong refreshRejectedCount = new AtomicLong();
+    /**
+     * 版本更新后返回旧值的次数、旧值超过过时窗口被丢弃的数量，以及返回的旧值最长已过时多久(毫秒)
+     */
+    private final AtomicLong staleReadCount = new AtomicLong();
+    private final AtomicLong staleDropCount = new AtomicLong();
+    private final AtomicLong maxStaleMillis = new AtomicLong();
+
+    void recordLookup(boolean hit) {
+        if (hit) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+    }
+
+    void recordEviction() {
+        evictionCount.incrementAndGet();
+    }
+
+    void recordExpiration() {
+        expirationCount.incrementAndGet();
+    }
+
+    void recordNullPut() {
+        nullPutCount.incrementAndGet();
+    }
+
+    void recordNullHit() {
+        nullHitCount.incrementAndGet();
+    }
+
+    void recordL2Lookup(boolean hit) {
+        if (hit) {
+            l2HitCount.incrementAndGet();
+        } else {
+            l2MissCount.incrementAndGet();
+        }
+    }
+
+    void recordL2Put() {
+        l2PutCount.incrementAndGet();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 命中率，没有读取时为1
+     *
+     * @return
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 1.0d : (double) hits / total;
+    }
+
+    void recordRefresh(boolean accepted) {
+        if (accepted) {
+            refreshCount.incrementAndGet();
+        } else {
+            refreshRejectedCount.incrementAndGet();
+        }
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    public long getRefreshRejectedCount() {
+        return refreshRejectedCount.get();
+    }
+
+    void recordStaleRead(long staleMillis) {
+        staleReadCount.incrementAndGet();
+        for (; ; ) {
+            long max = maxStaleMillis.get();
+            if (staleMillis <= max || maxStaleMillis.compareAndSet(max, staleMillis)) {
+                return;
+            }
+        }
+    }
+
+    void recordStaleDrop() {
+        staleDropCount.incrementAndGet();
+    }
+
+    public long getStaleReadCount() {
+        return staleReadCount.get();
+    }
+
+    public long getStaleDropCount() {
+        return staleDropCount.get();
+    }
+
+    public long getMaxStaleMillis() {
+        return maxStaleMillis.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public long getExpirationCount() {
+        return expirationCount.get();
+    }
+
+    public long getNullPutCount() {
+        return nullPutCount.get();
+    }
+
+    public long getNullHitCount() {
+        return nullHitCount.get();
+    }
+
+    public long getL2HitCount() {
+        return l2HitCount.get();
+    }
+
+    public long getL2MissCount() {
+        return l2MissCount.get();
+    }
+
+    public long getL2PutCount() {
+        return l2PutCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount.get()
+                + ", missCount=" + missCount.get()
+                + ", evictionCount=" + evictionCount.get()
+                + ", expirationCount=" + expirationCount.get()
+                + ", nullPutCount=" + nullPutCount.get()
+                + ", nullHitCount=" + nullHitCount.get()
+                + ", l2HitCount=" + l2HitCount.get()
+                + ", l2MissCount=" + l2MissCount.get()
+                + ", l2PutCount=" + l2PutCount.get()
+                + ", refreshCount=" + refreshCount.get()
+                + ", refreshRejectedCount=" + refreshRejectedCount.get()
+                + ", staleReadCount=" + staleReadCount.get()
+                + ", staleDropCount=" + staleDropCount.get()
+                + ", maxStaleMillis=" + maxStaleMillis.get() + "}";
+    }
+}
@@ -0,0 +1,232 @@
+package cn.fww.icache;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @description: 默认的权重估算，按64位JVM开启指针压缩估算对象占用的字节数(对象头12字节，引用4字节，按8字节对齐)。
+ * String、基本类型包装类、数组、集合和Map按结构估算；超过采样数的集合只估算前面的元素再按数量放大；
+ * 其他对象按字段递归估算(超过深度的只算引用)，类的字段信息缓存起来。
+ * 一次估算中同一个对象只计算一次，相互引用的对象图不会重复遍历；访问的对象数超过上限后不再展开，
+ * 集合按已估算的元素放大，其他对象只算自身。结果只用于限制容量，不追求精确。
+ * @author: Wen
+ * @date: create in 2018/2/17 10:25
+ */
+public class DefaultWeigher implements Weigher {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    /**
+     * 缓存对象、map节点和key的固定开销
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+    /**
+     * 集合元素的采样数量
+     */
+    private static final int SAMPLE_SIZE = 64;
+    /**
+     * 递归估算的最大深度
+     */
+    private static final int MAX_DEPTH = 8;
+    /**
+     * 一次估算最多展开的对象数
+     */
+    private static final int MAX_NODES = 1024;
+
+    private final ConcurrentHashMap<Class<?>, Field[]> fieldCache = new ConcurrentHashMap<>();
+
+    @Override
+    public int weigh(String key, Object value) {
+        Walk walk = new Walk();
+        long weight = ENTRY_OVERHEAD + sizeOf(key, 0, walk) + sizeOf(value, 0, walk);
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private long sizeOf(Object value, int depth, Walk walk) {
+        if (value == null || value == NullValue.INSTANCE) {
+            return 0;
+        }
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            if (!walk.visit(value)) {
+                return 0;
+            }
+            // String对象 + char数组
+            return align(OBJECT_HEADER + 12) + align(ARRAY_HEADER + 2L * ((String) value).length());
+        }
+        if (type == Integer.class || type == Float.class || type == Short.class || type == Byte.class
+                || type == Character.class || type == Boolean.class) {
+            return 16;
+        }
+        if (type == Long.class || type == Double.class) {
+            return 24;
+        }
+        if (type == Date.class) {
+            return 24;
+        }
+        if (type.isArray() && type.getComponentType().isPrimitive()) {
+            return sizeOfArray(value, type.getComponentType(), depth, walk);
+        }
+        if (depth >= MAX_DEPTH && !type.isArray()) {
+            return 0;
+        }
+        if (!walk.visit(value)) {
+            // 已经计算过的共享对象或环
+            return 0;
+        }
+        if (type.isArray()) {
+            return sizeOfArray(value, type.getComponentType(), depth, walk);
+        }
+        if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            // 集合对象 + 内部数组(ArrayList等)或节点(链表、HashSet等)
+            int perElement = value instanceof RandomAccess ? REFERENCE : REFERENCE + 32;
+            return 48 + (long) collection.size() * perElement
+                    + sampled(collection.iterator(), collection.size(), depth, walk);
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            long size = 64 + (long) map.size() * (REFERENCE + 32);
+            size += sampled(map.keySet().iterator(), map.size(), depth, walk);
+            size += sampled(map.values().iterator(), map.size(), depth, walk);
+            return size;
+        }
+        return sizeOfObject(value, type, depth, walk);
+    }
+
+    private long sizeOfArray(Object array, Class<?> componentType, int depth, Walk walk) {
+        int length = Array.getLength(array);
+        if (componentType.isPrimitive()) {
+            return align(ARRAY_HEADER + (long) length * primitiveSize(componentType));
+        }
+        long size = align(ARRAY_HEADER + (long) length * REFERENCE);
+        if (depth >= MAX_DEPTH || length == 0) {
+            return size;
+        }
+        Object[] elements = (Object[]) array;
+        int sample = Math.min(length, SAMPLE_SIZE);
+        long sampledSize = 0;
+        int sampled = 0;
+        while (sampled < sample && !walk.exhausted()) {
+            sampledSize += sizeOf(elements[sampled], depth + 1, walk);
+            sampled++;
+        }
+        return sampled == 0 ? size : size + sampledSize * length / sampled;
+    }
+
+    /**
+     * 估算前SAMPLE_SIZE个元素(访问的对象数达到上限时提前停止)，按总数放大
+     */
+    private long sampled(Iterator<?> iterator, int count, int depth, Walk walk) {
+        if (count == 0) {
+            return 0;
+        }
+        long sampledSize = 0;
+        int sampled = 0;
+        while (sampled < SAMPLE_SIZE && !walk.exhausted() && iterator.hasNext()) {
+            sampledSize += sizeOf(iterator.next(), depth + 1, walk);
+            sampled++;
+        }
+        return sampled == 0 ? 0 : sampledSize * count / sampled;
+    }
+
+    private long sizeOfObject(Object value, Class<?> type, int depth, Walk walk) {
+        Field[] fields = fieldsOf(type);
+        long size = OBJECT_HEADER;
+        for (Field field : fields) {
+            Class<?> fieldType = field.getType();
+            if (fieldType.isPrimitive()) {
+                size += primitiveSize(fieldType);
+            } else {
+                size += REFERENCE;
+                if (walk.exhausted()) {
+                    // 只算引用
+                    continue;
+                }
+                try {
+                    size += sizeOf(field.get(value), depth + 1, walk);
+                } catch (IllegalAccessException e) {
+                    // 只算引用
+                }
+            }
+        }
+        return align(size);
+    }
+
+    private Field[] fieldsOf(Class<?> type) {
+        Field[] fields = fieldCache.get(type);
+        if (fields == null) {
+            List<Field> list = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                    } catch (SecurityException e) {
+                        continue;
+                    }
+                    list.add(field);
+                }
+            }
+            fields = list.toArray(new Field[list.size()]);
+            fieldCache.putIfAbsent(type, fields);
+        }
+        return fields;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * 一次估算的遍历状态：已计算的对象和剩余可展开的对象数
+     */
+    private static final class Walk {
+        private final IdentityHashMap<Object, Boolean> visited = new IdentityHashMap<>();
+        private int remaining = MAX_NODES;
+
+        /**
+         * 标记对象已计算
+         *
+         * @param value
+         * @return 之前已经计算过时返回false
+         */
+        boolean visit(Object value) {
+            if (visited.put(value, Boolean.TRUE) != null) {
+                return false;
+            }
+            remaining--;
+            return true;
+        }
+
+        boolean exhausted() {
+            return remaining <= 0;
+        }
+    }
+}
@@ -0,0 +1,616 @@
+package cn.fww.icache;
+
+import cn.fww.icache.codec.Codec;
+import cn.fww.icache.codec.CodecException;
+import cn.fww.icache.common.SystemClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * @description: 磁盘溢出层。被淘汰策略挤出的数据编码后追加写入内存映射的段文件，内存中只保留key到记录位置的索引；
+ * 一级缓存未命中时查索引，命中后解码并提升回一级缓存，同时从磁盘层删除。
+ * 淘汰发生在淘汰锁内，这里只把数据放进队列，由{@link cn.fww.icache.actor.schedule.DiskStoreActor}定时写盘，
+ * 写盘和压缩都在flush里串行执行，段文件只追加不覆盖，读取方不加锁。
+ * 记录格式：长度(4) + CRC32(4) + key长度(4) + key + 版本号(8) + 过期时间(8) + 值，读取时校验CRC和key。
+ * 段数达到上限时丢弃最旧的段；有效数据占比低于阈值的段由压缩把有效记录搬到当前段后删除。
+ * 值的编码与堆外存储使用同一个编解码器，堆外数据溢出时直接复制编码后的字节。
+ * 目录用锁文件独占，启动时清空段文件，不能被其他进程或其他区域同时使用。
+ * @author: Wen
+ * @date: create in 2018/2/14 10:30
+ */
+public class DiskStore implements WindowTinyLfuPolicy.EvictionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskStore.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String LOCK_FILE = "icache.lock";
+    /**
+     * 记录头：长度 + CRC32
+     */
+    private static final int HEADER_SIZE = 8;
+    /**
+     * 等待写盘的数据上限，写盘跟不上时直接丢弃
+     */
+    private static final int MAX_PENDING = 100000;
+
+    private final Codec codec;
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final double compactionThreshold;
+    private final long compactionInterval;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    private final ConcurrentHashMap<String, DiskEntry> index = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<Spill> pending = new LinkedBlockingQueue<>(MAX_PENDING);
+    /**
+     * 每个key最新的待写盘数据。删除或再次淘汰时替换掉，写盘时只写仍是最新的数据，
+     * 删除前排队的数据不会在删除后被写盘"复活"
+     */
+    private final ConcurrentHashMap<String, Spill> pendingByKey = new ConcurrentHashMap<>();
+
+    /**
+     * 以下只在flush(持有对象锁)里访问
+     */
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private long nextSegmentId;
+    private long nextCompactionTime;
+
+    private volatile ConcurrentHashMap<String, CacheObject> data;
+    private volatile boolean closed;
+
+    private final AtomicLong spillCount = new AtomicLong();
+    private final AtomicLong dropCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong compactionCount = new AtomicLong();
+
+    /**
+     * @param codec               值的编解码器
+     * @param directory           段文件目录，启动时清空旧的段文件，关闭前由本实例独占
+     * @param capacity            磁盘占用上限(字节)
+     * @param segmentSize         每个段文件大小(字节)，也是单条记录的上限
+     * @param compactionThreshold 有效数据占比低于多少时压缩
+     * @param compactionInterval  压缩检查间隔(毫秒)
+     * @throws IOException 目录不可用或正被其他进程使用
+     */
+    public DiskStore(Codec codec, File directory, long capacity, int segmentSize, double compactionThreshold,
+                     long compactionInterval) throws IOException {
+        this.codec = codec;
+        this.directory = directory;
+        this.segmentSize = Math.max(segmentSize, 1024);
+        this.maxSegments = (int) Math.max(2, Math.min(Integer.MAX_VALUE, capacity / this.segmentSize));
+        this.compactionThreshold = compactionThreshold;
+        this.compactionInterval = compactionInterval;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建磁盘缓存目录" + directory);
+        }
+        File lockFile = new File(directory, LOCK_FILE);
+        this.lockChannel = new RandomAccessFile(lockFile, "rw").getChannel();
+        FileLock fileLock;
+        try {
+            fileLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            lockChannel.close();
+            throw new IOException("磁盘缓存目录" + directory + "正被使用");
+        }
+        this.lock = fileLock;
+        lockFile.deleteOnExit();
+        deleteSegmentFiles();
+    }
+
+    /**
+     * 关联一级缓存，写盘后发现一级缓存已有新值时丢弃刚写的记录
+     *
+     * @param data
+     */
+    void bind(ConcurrentHashMap<String, CacheObject> data) {
+        this.data = data;
+    }
+
+    /**
+     * 数据被淘汰时放入写盘队列，在淘汰锁内调用，不做编码和IO
+     *
+     * @param e
+     */
+    @Override
+    public void onEviction(CacheObject e) {
+        if (closed) {
+            return;
+        }
+        long expireTime = e.getExpireTime();
+        if (expireTime > 0 && SystemClock.now() >= expireTime) {
+            return;
+        }
+        Object value = e.getObj();
+        byte[] encoded = null;
+        if (value instanceof OffHeapValue) {
+            // 堆外空间随后就会释放，这里先复制编码后的字节
+            OffHeapValue offHeapValue = (OffHeapValue) value;
+            encoded = offHeapValue.slab.store.copyBytes(offHeapValue);
+            if (encoded == null) {
+                return;
+            }
+            value = null;
+        }
+        Spill spill = new Spill(e.key, e.getVersion(), expireTime, value, encoded);
+        pendingByKey.put(e.key, spill);
+        if (!pending.offer(spill)) {
+            pendingByKey.remove(e.key, spill);
+            dropCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 读取磁盘上的数据
+     *
+     * @param key
+     * @return 没有、已过期或校验失败时返回null；返回的对象不在一级缓存中
+     */
+    CacheObject get(String key) {
+        DiskEntry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireTime > 0 && SystemClock.now() >= entry.expireTime) {
+            removeEntry(key, entry);
+            missCount.incrementAndGet();
+            return null;
+        }
+        byte[] body = readBody(entry);
+        CacheObject cacheObject = body == null ? null : decode(key, body);
+        if (cacheObject == null) {
+            removeEntry(key, entry);
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return cacheObject;
+    }
+
+    /**
+     * 删除磁盘上的数据(只删除索引，空间由压缩回收)，同时作废还没写盘的数据
+     *
+     * @param key
+     */
+    void remove(String key) {
+        // 先作废待写盘的数据再删索引，与append中先登记索引再核对的顺序配合
+        pendingByKey.remove(key);
+        DiskEntry old = index.remove(key);
+        if (old != null) {
+            old.segment.liveBytes.addAndGet(-old.length);
+        }
+    }
+
+    /**
+     * 把队列里的数据写盘，到时间时顺带压缩，由调度任务串行调用
+     */
+    public synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        Spill spill;
+        while ((spill = pending.poll()) != null) {
+            write(spill);
+        }
+        long now = SystemClock.now();
+        if (now >= nextCompactionTime) {
+            nextCompactionTime = now + compactionInterval;
+            compact();
+        }
+    }
+
+    /**
+     * 停止写盘，删除段文件并释放目录
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pending.clear();
+        pendingByKey.clear();
+        index.clear();
+        segments.clear();
+        active = null;
+        deleteSegmentFiles();
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            logger.warn("释放磁盘缓存目录{}失败", directory, e);
+        }
+    }
+
+    private void write(Spill spill) {
+        // 排队后被删除或被更新的淘汰数据替换了，不再写盘
+        if (pendingByKey.get(spill.key) != spill) {
+            return;
+        }
+        byte[] value = spill.encoded;
+        if (value == null) {
+            try {
+                value = codec.encode(spill.value);
+            } catch (CodecException e) {
+                logger.debug("值无法编码，不写入磁盘。{}", e.getMessage());
+                pendingByKey.remove(spill.key, spill);
+                dropCount.incrementAndGet();
+                return;
+            }
+        }
+        byte[] key = spill.key.getBytes(UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(4 + key.length + 16 + value.length);
+        body.putInt(key.length).put(key).putLong(spill.version).putLong(spill.expireTime).put(value);
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + body.capacity());
+        record.putInt(body.capacity()).putInt((int) crc.getValue()).put(body.array());
+        DiskEntry entry = append(spill.key, record.array(), spill.version, spill.expireTime);
+        // 登记索引后再核对：期间被删除(或又有新的淘汰数据)时撤销刚登记的索引
+        if (!pendingByKey.remove(spill.key, spill)) {
+            if (entry != null) {
+                removeEntry(spill.key, entry);
+            }
+            return;
+        }
+        if (entry != null) {
+            spillCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 追加一条记录并登记索引
+     *
+     * @return 放不下时返回null
+     */
+    private DiskEntry append(String key, byte[] record, long version, long expireTime) {
+        if (record.length > segmentSize) {
+            dropCount.incrementAndGet();
+            return null;
+        }
+        Segment segment = segmentFor(record.length);
+        if (segment == null) {
+            dropCount.incrementAndGet();
+            return null;
+        }
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(segment.position);
+        buffer.put(record);
+        DiskEntry entry = new DiskEntry(segment, segment.position, record.length, version, expireTime);
+        segment.position += record.length;
+        segment.liveBytes.addAndGet(record.length);
+        DiskEntry old = index.put(key, entry);
+        if (old != null) {
+            old.segment.liveBytes.addAndGet(-old.length);
+        }
+        // 一级缓存写入时会删除磁盘数据，先登记再检查，两边至少有一方能删掉这条旧数据
+        ConcurrentHashMap<String, CacheObject> current = data;
+        if (current != null && current.containsKey(key)) {
+            removeEntry(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private Segment segmentFor(int length) {
+        if (active != null && active.position + length <= segmentSize) {
+            return active;
+        }
+        while (segments.size() >= maxSegments) {
+            dropOldest();
+        }
+        try {
+            File file = new File(directory, SEGMENT_PREFIX + (nextSegmentId++) + SEGMENT_SUFFIX);
+            MappedByteBuffer buffer;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            }
+            active = new Segment(file, buffer);
+            segments.add(active);
+            return active;
+        } catch (IOException e) {
+            logger.warn("创建磁盘缓存段文件失败", e);
+            active = null;
+            return null;
+        }
+    }
+
+    /**
+     * 空间用完时丢弃最旧的段及其中的数据
+     */
+    private void dropOldest() {
+        Segment oldest = segments.remove(0);
+        if (oldest == active) {
+            active = null;
+        }
+        int dropped = 0;
+        for (Map.Entry<String, DiskEntry> e : index.entrySet()) {
+            if (e.getValue().segment == oldest && index.remove(e.getKey(), e.getValue())) {
+                dropped++;
+            }
+        }
+        dropCount.addAndGet(dropped);
+        deleteSegment(oldest);
+    }
+
+    /**
+     * 把有效数据占比低的段里的有效记录搬到当前段，然后删除该段。
+     * 搬移时复制原始记录，不解码；索引用replace更新，期间被删除或更新的key不受影响
+     */
+    private void compact() {
+        List<Segment> candidates = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment != active && segment.liveBytes.get() < segment.position * compactionThreshold) {
+                candidates.add(segment);
+            }
+        }
+        for (Segment segment : candidates) {
+            if (!segments.contains(segment)) {
+                continue;
+            }
+            int moved = 0;
+            for (Map.Entry<String, DiskEntry> e : index.entrySet()) {
+                DiskEntry entry = e.getValue();
+                if (entry.segment != segment) {
+                    continue;
+                }
+                if (entry.expireTime > 0 && SystemClock.now() >= entry.expireTime) {
+                    removeEntry(e.getKey(), entry);
+                    continue;
+                }
+                byte[] record = new byte[entry.length];
+                ByteBuffer buffer = segment.buffer.duplicate();
+                buffer.position(entry.offset);
+                buffer.get(record);
+                Segment target = segmentFor(record.length);
+                if (target == null || !segments.contains(segment)) {
+                    break;
+                }
+                ByteBuffer out = target.buffer.duplicate();
+                out.position(target.position);
+                out.put(record);
+                DiskEntry relocated = new DiskEntry(target, target.position, record.length, entry.version, entry.expireTime);
+                target.position += record.length;
+                if (index.replace(e.getKey(), entry, relocated)) {
+                    target.liveBytes.addAndGet(record.length);
+                    moved++;
+                }
+            }
+            if (segments.remove(segment)) {
+                // 搬移失败剩下的记录随段一起丢弃
+                for (Map.Entry<String, DiskEntry> e : index.entrySet()) {
+                    if (e.getValue().segment == segment) {
+                        removeEntry(e.getKey(), e.getValue());
+                    }
+                }
+                deleteSegment(segment);
+                compactionCount.incrementAndGet();
+                logger.debug("压缩磁盘缓存段{}，搬移{}条记录", segment.file.getName(), moved);
+            }
+        }
+    }
+
+    private void removeEntry(String key, DiskEntry entry) {
+        if (index.remove(key, entry)) {
+            entry.segment.liveBytes.addAndGet(-entry.length);
+        }
+    }
+
+    /**
+     * 段文件只追加，已登记的记录不会再被改写；段被删除后映射仍然有效，直到映射对象被回收
+     */
+    private byte[] readBody(DiskEntry entry) {
+        ByteBuffer buffer = entry.segment.buffer.duplicate();
+        buffer.position(entry.offset);
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length != entry.length - HEADER_SIZE) {
+            return null;
+        }
+        byte[] body = new byte[length];
+        buffer.get(body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != checksum) {
+            logger.warn("磁盘缓存记录校验失败，{}偏移{}", entry.segment.file.getName(), entry.offset);
+            return null;
+        }
+        return body;
+    }
+
+    private CacheObject decode(String key, byte[] body) {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        int keyLength = buffer.getInt();
+        if (keyLength < 0 || keyLength > buffer.remaining()
+                || !key.equals(new String(body, 4, keyLength, UTF_8))) {
+            return null;
+        }
+        buffer.position(4 + keyLength);
+        long version = buffer.getLong();
+        long expireTime = buffer.getLong();
+        int offset = buffer.position();
+        Object value;
+        try {
+            value = codec.decode(body, offset, body.length - offset);
+        } catch (CodecException e) {
+            logger.warn("磁盘缓存的值无法解码，当作没有缓存。{}", e.getMessage());
+            return null;
+        }
+        CacheObject cacheObject = new CacheObject();
+        cacheObject.key = key;
+        cacheObject.setObj(value);
+        cacheObject.setVersion(version);
+        cacheObject.setExpireTime(expireTime);
+        return cacheObject;
+    }
+
+    private void deleteSegment(Segment segment) {
+        if (!segment.file.delete()) {
+            logger.warn("删除磁盘缓存段文件{}失败", segment.file);
+            segment.file.deleteOnExit();
+        }
+    }
+
+    private void deleteSegmentFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX) && !file.delete()) {
+                logger.warn("删除磁盘缓存段文件{}失败", file);
+            }
+        }
+    }
+
+    /**
+     * 磁盘上的数据量
+     *
+     * @return
+     */
+    public int getEntryCount() {
+        return index.size();
+    }
+
+    /**
+     * 有效记录占用的磁盘空间(字节)
+     *
+     * @return
+     */
+    public synchronized long getLiveBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.liveBytes.get();
+        }
+        return bytes;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public long getCapacity() {
+        return (long) maxSegments * segmentSize;
+    }
+
+    /**
+     * 等待写盘的数据量
+     *
+     * @return
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getSpillCount() {
+        return spillCount.get();
+    }
+
+    /**
+     * 因队列满、无法编码或空间不足而丢弃的数据量
+     *
+     * @return
+     */
+    public long getDropCount() {
+        return dropCount.get();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getCompactionCount() {
+        return compactionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "DiskStore{entryCount=" + index.size()
+                + ", spillCount=" + spillCount.get()
+                + ", dropCount=" + dropCount.get()
+                + ", hitCount=" + hitCount.get()
+                + ", missCount=" + missCount.get()
+                + ", compactionCount=" + compactionCount.get() + "}";
+    }
+
+    /**
+     * 等待写盘的数据，堆外数据带着编码后的字节
+     */
+    private static final class Spill {
+        final String key;
+        final long version;
+        final long expireTime;
+        final Object value;
+        final byte[] encoded;
+
+        Spill(String key, long version, long expireTime, Object value, byte[] encoded) {
+            this.key = key;
+            this.version = version;
+            this.expireTime = expireTime;
+            this.value = value;
+            this.encoded = encoded;
+        }
+    }
+
+    private static final class Segment {
+        final File file;
+        final MappedByteBuffer buffer;
+        /**
+         * 写入位置，只在flush里修改；读取方只读已登记到索引的区域
+         */
+        int position;
+        final AtomicLong liveBytes = new AtomicLong();
+
+        Segment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class DiskEntry {
+        final Segment segment;
+        final int offset;
+        final int length;
+        final long version;
+        final long expireTime;
+
+        DiskEntry(Segment segment, int offset, int length, long version, long expireTime) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.version = version;
+            this.expireTime = expireTime;
+        }
+    }
+}
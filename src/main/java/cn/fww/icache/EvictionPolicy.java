@@ -0,0 +1,19 @@
+package cn.fww.icache;
+
+/**
+ * @description: 缓存区域超过容量后的淘汰策略
+ * @author: Wen
+ * @date: create in 2018/2/16 10:05
+ */
+public enum EvictionPolicy {
+
+    /**
+     * W-TinyLFU：窗口LRU加按访问频率准入的分段LRU，适合访问频率差异大的数据
+     */
+    TINY_LFU,
+
+    /**
+     * 最近最少使用，整个区域作为一个LRU队列，适合按时间顺序访问的数据
+     */
+    LRU
+}
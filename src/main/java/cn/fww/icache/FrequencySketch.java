@@ -0,0 +1,102 @@
+package cn.fww.icache;
+
+/**
+ * @description: 访问频率估算器(4bit的Count-Min Sketch)，供淘汰策略判断候选者能否进入主空间。
+ * 计数达到采样上限后全部减半，使历史热点随时间衰减。
+ * @author: Wen
+ * @date: create in 2018/1/15 10:21
+ */
+final class FrequencySketch {
+
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private int sampleSize;
+    private int tableMask;
+    private long[] table;
+    private int size;
+
+    FrequencySketch(long maximumSize) {
+        int maximum = (int) Math.min(Math.max(maximumSize, 1), Integer.MAX_VALUE >>> 1);
+        table = new long[ceilingPowerOfTwo(maximum)];
+        tableMask = Math.max(0, table.length - 1);
+        sampleSize = (maximum > Integer.MAX_VALUE / 10) ? Integer.MAX_VALUE : 10 * maximum;
+        size = 0;
+    }
+
+    /**
+     * 估算元素的访问频率(最大15)
+     *
+     * @param e
+     * @return
+     */
+    int frequency(Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 增加元素的访问频率
+     *
+     * @param e
+     */
+    void increment(Object e) {
+        int hash = spread(e.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            added |= incrementAt(index, start + i);
+        }
+        if (added && (++size == sampleSize)) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = (0xfL << offset);
+        if ((table[i] & mask) != mask) {
+            table[i] += (1L << offset);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 所有计数减半
+     */
+    private void reset() {
+        int count = 0;
+        for (int i = 0; i < table.length; i++) {
+            count += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (count >>> 2);
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+}
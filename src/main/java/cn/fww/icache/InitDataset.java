@@ -0,0 +1,135 @@
+package cn.fww.icache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @description: 初始化数据集。isInit方法的全部结果(每个initOption一个key)在旁边完整加载成一个不可变的数据集，
+ * 加载完成后整体替换旧数据集，读取方只会看到旧的或新的完整数据集，不会看到空的或更新了一半的数据。
+ * 数据集创建后不再修改，读取无需加锁；缓存的值同样不应再被修改。
+ * @author: Wen
+ * @date: create in 2018/2/18 10:20
+ */
+public final class InitDataset {
+
+    private final String name;
+    private final HashMap<String, Object> values;
+    /**
+     * 加载时各key的版本号，不带版本的key没有记录
+     */
+    private final HashMap<String, Long> versions;
+    private final long createTime;
+    private final long loadMillis;
+
+    private InitDataset(Builder builder) {
+        this.name = builder.name;
+        this.values = builder.values;
+        this.versions = builder.versions;
+        this.createTime = System.currentTimeMillis();
+        this.loadMillis = createTime - builder.startTime;
+    }
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    /**
+     * 获取数据
+     *
+     * @param key
+     * @return 数据集中没有该key时返回null
+     */
+    public Object get(String key) {
+        return values.get(key);
+    }
+
+    /**
+     * 加载后该key的版本是否没有更新过
+     *
+     * @param key
+     * @return 不带版本的key总是返回true
+     */
+    public boolean isCurrent(String key) {
+        Long version = versions.get(key);
+        return version == null || version == InnerCache.currentVersion(key);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    /**
+     * 加载整个数据集的耗时(毫秒)
+     *
+     * @return
+     */
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "InitDataset{name=" + name + ", size=" + values.size() + ", createTime=" + createTime
+                + ", loadMillis=" + loadMillis + "}";
+    }
+
+    /**
+     * 数据集构建器，只在加载线程中使用，build之后不能再使用
+     */
+    public static final class Builder {
+        private final String name;
+        private final long startTime = System.currentTimeMillis();
+        private HashMap<String, Object> values = new HashMap<>();
+        private HashMap<String, Long> versions = new HashMap<>();
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        /**
+         * 添加数据
+         *
+         * @param key
+         * @param value   不能为null
+         * @param version 加载前的版本号，不带版本为{@link CacheObject#NO_VERSION}
+         * @return
+         */
+        public Builder put(String key, Object value, long version) {
+            if (value == null) {
+                throw new IllegalArgumentException("数据集" + name + "的值不能为null，key=" + key);
+            }
+            values.put(key, value);
+            if (version != CacheObject.NO_VERSION) {
+                versions.put(key, version);
+            } else {
+                versions.remove(key);
+            }
+            return this;
+        }
+
+        public InitDataset build() {
+            // 按最终数据量重新建表，读取时冲突更少
+            HashMap<String, Object> sized = new HashMap<>(Math.max(16, (int) (values.size() / 0.75f) + 1));
+            sized.putAll(values);
+            values = sized;
+            InitDataset dataset = new InitDataset(this);
+            values = null;
+            versions = null;
+            return dataset;
+        }
+    }
+}
@@ -3,10 +3,12 @@ package cn.fww.icache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * @description: 一级缓存
+ * @description: 一级缓存。数据按区域存放，每个区域有独立的容量、ttl、淘汰策略、存放方式和统计信息；
+ * 不指定区域的静态方法操作默认区域。版本号和actor路径是全局的。
  * @author: Wen
  * @date : create in 2017/11/23 11:57
  */
@@ -14,70 +16,159 @@ public class InnerCache {
     private static final Logger logger = LoggerFactory.getLogger(InnerCache.class);
 
     /**
-     * 数据缓存时间(-1为随应用的生命周期)
+     * 默认区域名称
      */
-    private static final int TTL = -1;
+    public static final String DEFAULT_REGION = "default";
+
+    private static final ConcurrentHashMap<String, Long> CACHE_VERSION_MAP = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, String> CACHE_ACTOR_PATH = new ConcurrentHashMap<>();
     /**
-     * 最多缓存多少数据
+     * 全部区域
      */
-    private static final int MAX_OBJECT_COUNT = 100000;
+    private static final ConcurrentHashMap<String, CacheRegion> REGIONS = new ConcurrentHashMap<>();
     /**
-     * 缓存map
+     * 初始化数据集，整体替换；以及数据集中的key所属的数据集
      */
-    private static final ConcurrentHashMap<String, CacheObject> CACHE_MAP = new ConcurrentHashMap<>();
-    private static final ConcurrentHashMap<String, String> CACHE_VERSION_MAP = new ConcurrentHashMap<>();
-    private static final ConcurrentHashMap<String, String> CACHE_ACTOR_PATH = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, InitDataset> DATASETS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, String> DATASET_OF_KEY = new ConcurrentHashMap<>();
+    /**
+     * 版本更新后继续使用旧值的最长时间(毫秒)，0为版本更新时立即作废旧值
+     */
+    private static volatile long maxStaleness;
+    /**
+     * 默认区域(最多缓存100000条，不过期)，启动时按InnerCacheTemplate的配置重建
+     */
+    private static volatile CacheRegion defaultRegion = createRegion(new CacheRegionConfig(DEFAULT_REGION), null, null);
 
     private InnerCache() {
     }
 
     /**
-     * 添加缓存
+     * 添加缓存到默认区域
      *
      * @param key
      * @param value
      * @param ttl
+     * @param version 写入时的版本号，不带版本为{@link CacheObject#NO_VERSION}
      * @return
      */
-    protected static boolean put(String key, Object value, int ttl, boolean isVersion) {
-        if (CACHE_MAP.size() > MAX_OBJECT_COUNT) {
-            return false;
-        }
-        try {
-            long timeStamp = System.currentTimeMillis();
-            CacheObject cacheObject = new CacheObject();
-            cacheObject.setObj(value);
-            cacheObject.setExpireTime(ttl == -1 ? ttl : timeStamp + ttl);
-            CACHE_MAP.put(key, cacheObject);
-            return true;
-        } catch (Exception e) {
-            logger.error("添加内部缓存出错。", e);
-            return false;
-        }
+    protected static boolean put(String key, Object value, int ttl, long version) {
+        return defaultRegion.put(key, value, ttl, version);
     }
 
-
     /**
-     * 获取缓存数据
+     * 从默认区域获取缓存数据，已过期的数据按未命中处理；缓存的null结果返回{@link NullValue#INSTANCE}
      *
      * @param key
      * @return
      */
     protected static Object get(String key) {
-        CacheObject cacheObject = CACHE_MAP.get(key);
-        if (cacheObject == null) {
-            return null;
-        }
-        return cacheObject.getObj();
+        return defaultRegion.get(key);
     }
 
     /**
-     * 删除缓存
+     * 删除默认区域的缓存
      *
      * @param key
      */
     protected static void remove(String key) {
-        CACHE_MAP.remove(key);
+        defaultRegion.remove(key);
+    }
+
+    /**
+     * 区域内的key，用于按key合并加载或刷新：不同区域的同名key是不同的数据
+     *
+     * @param region 为空时为默认区域
+     * @param key
+     * @return
+     */
+    public static String regionKey(String region, String key) {
+        return (region == null || region.isEmpty() ? DEFAULT_REGION : region) + '\0' + key;
+    }
+
+    /**
+     * 按名称获取区域，没有配置的区域按默认设置自动创建
+     *
+     * @param name 为空时返回默认区域
+     * @return
+     */
+    protected static CacheRegion region(String name) {
+        if (name == null || name.isEmpty()) {
+            return defaultRegion;
+        }
+        CacheRegion region = REGIONS.get(name);
+        if (region == null) {
+            CacheRegion created = new CacheRegion(new CacheRegionConfig(name), null, null);
+            region = REGIONS.putIfAbsent(name, created);
+            if (region == null) {
+                logger.info("缓存区域{}没有配置，按默认设置创建", name);
+                region = created;
+            }
+        }
+        return region;
+    }
+
+    /**
+     * 创建区域，替换同名的区域(原区域的数据丢弃)，只在启动时调用
+     *
+     * @param config
+     * @param offHeapStore 为null时值放在堆上
+     * @param diskStore    为null时不启用磁盘溢出层
+     * @return
+     */
+    protected static CacheRegion createRegion(CacheRegionConfig config, OffHeapStore offHeapStore, DiskStore diskStore) {
+        CacheRegion region = new CacheRegion(config, offHeapStore, diskStore);
+        REGIONS.put(config.getName(), region);
+        if (DEFAULT_REGION.equals(config.getName())) {
+            defaultRegion = region;
+        }
+        return region;
+    }
+
+    /**
+     * 获取已有的区域
+     *
+     * @param name
+     * @return 没有时返回null
+     */
+    public static CacheRegion getRegion(String name) {
+        return REGIONS.get(name);
+    }
+
+    /**
+     * 全部区域
+     *
+     * @return
+     */
+    public static Collection<CacheRegion> getRegions() {
+        return REGIONS.values();
+    }
+
+    /**
+     * 默认区域的堆外存储
+     *
+     * @return 没有启用时返回null
+     */
+    public static OffHeapStore getOffHeapStore() {
+        return defaultRegion.getOffHeapStore();
+    }
+
+    /**
+     * 默认区域的磁盘溢出层
+     *
+     * @return 没有启用时返回null
+     */
+    public static DiskStore getDiskStore() {
+        return defaultRegion.getDiskStore();
+    }
+
+    /**
+     * 推进各区域的过期时间轮，删除到期的缓存
+     */
+    public static void expireEntries() {
+        for (CacheRegion region : REGIONS.values()) {
+            region.expireEntries();
+        }
     }
 
     /**
@@ -87,17 +178,86 @@ public class InnerCache {
      * @param version
      * @return
      */
-    protected static String putToVersion(String key, String version) {
+    protected static Long putToVersion(String key, long version) {
         return CACHE_VERSION_MAP.put(key, version);
     }
 
+    /**
+     * 没有版本号时才存储
+     *
+     * @param key
+     * @param version
+     * @return 已有的版本号，没有时返回null
+     */
+    protected static Long putToVersionIfAbsent(String key, long version) {
+        return CACHE_VERSION_MAP.putIfAbsent(key, version);
+    }
+
+    /**
+     * 更新版本号，并作废旧版本的缓存数据。
+     * 先更新版本再作废数据，写入方写入后会再核对版本，两边至少有一方能发现旧版本数据
+     *
+     * @param key
+     * @param version
+     * @return 原来的版本号
+     */
+    protected static Long updateVersion(String key, long version) {
+        Long oldVersion = CACHE_VERSION_MAP.put(key, version);
+        invalidateStale(key, version);
+        return oldVersion;
+    }
+
+    /**
+     * 只在新版本号更大时更新，用于乱序到达的版本通知；本地没有记录的key不处理
+     *
+     * @param key
+     * @param version
+     * @return 是否更新了
+     */
+    protected static boolean advanceVersion(String key, long version) {
+        for (; ; ) {
+            Long current = CACHE_VERSION_MAP.get(key);
+            if (current == null || current >= version) {
+                return false;
+            }
+            if (CACHE_VERSION_MAP.replace(key, current, version)) {
+                invalidateStale(key, version);
+                return true;
+            }
+        }
+    }
+
+    private static void invalidateStale(String key, long version) {
+        for (CacheRegion region : REGIONS.values()) {
+            region.invalidateStale(key, version);
+        }
+    }
+
+    protected static void setMaxStaleness(long maxStaleness) {
+        InnerCache.maxStaleness = Math.max(0, maxStaleness);
+    }
+
+    /**
+     * 版本更新后继续使用旧值的最长时间
+     *
+     * @return 0为不使用旧值
+     */
+    public static long getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    static long currentVersion(String key) {
+        Long version = CACHE_VERSION_MAP.get(key);
+        return version == null ? CacheObject.NO_VERSION : version;
+    }
+
     /**
      * 版本获取
      *
      * @param key
      * @return
      */
-    protected static String getVersion(String key) {
+    protected static Long getVersion(String key) {
         return CACHE_VERSION_MAP.get(key);
     }
 
@@ -123,12 +283,58 @@ public class InnerCache {
     }
 
     /**
-     * 获取所有缓存
+     * 发布数据集，一次替换整个数据集。先登记新数据集的key，再替换，最后清理新数据集中已没有的key
+     *
+     * @param dataset
+     * @return 被替换的数据集，没有时返回null
+     */
+    protected static InitDataset publishDataset(InitDataset dataset) {
+        String name = dataset.getName();
+        for (String key : dataset.keySet()) {
+            DATASET_OF_KEY.put(key, name);
+        }
+        InitDataset old = DATASETS.put(name, dataset);
+        if (old != null) {
+            for (String key : old.keySet()) {
+                if (dataset.get(key) == null) {
+                    DATASET_OF_KEY.remove(key, name);
+                }
+            }
+        }
+        return old;
+    }
+
+    /**
+     * 获取数据集
+     *
+     * @param name
+     * @return 没有加载时返回null
+     */
+    public static InitDataset getDataset(String name) {
+        return DATASETS.get(name);
+    }
+
+    /**
+     * key所属的数据集名称
+     *
+     * @param key
+     * @return 不属于任何数据集时返回null
+     */
+    public static String getDatasetName(String key) {
+        return DATASET_OF_KEY.get(key);
+    }
+
+    public static Collection<InitDataset> getDatasets() {
+        return DATASETS.values();
+    }
+
+    /**
+     * 获取默认区域的所有缓存(启用堆外存储时值为堆外索引，读取数据请用get)
      *
      * @return
      */
     public static ConcurrentHashMap<String, CacheObject> getAll() {
-        return CACHE_MAP;
+        return defaultRegion.getAll();
     }
 
     /**
@@ -136,7 +342,16 @@ public class InnerCache {
      *
      * @return
      */
-    public static ConcurrentHashMap<String, String> getCacheVersionMap() {
+    public static ConcurrentHashMap<String, Long> getCacheVersionMap() {
         return CACHE_VERSION_MAP;
     }
+
+    /**
+     * 获取默认区域的统计信息
+     *
+     * @return
+     */
+    public static CacheStats getStats() {
+        return defaultRegion.getStats();
+    }
 }
@@ -6,17 +6,43 @@ import akka.actor.Inbox;
 import akka.actor.Props;
 import cn.fww.icache.actor.eume.ActorCommand;
 import cn.fww.icache.actor.schedule.CacheExpiredActor;
+import cn.fww.icache.actor.schedule.DiskStoreActor;
+import cn.fww.icache.actor.schedule.SnapshotActor;
+import cn.fww.icache.actor.schedule.VersionRegisterActor;
+import cn.fww.icache.codec.BinaryCodec;
+import cn.fww.icache.codec.Codec;
+import cn.fww.icache.codec.CodecException;
 import cn.fww.icache.common.Constant;
+import cn.fww.icache.redis.RedisCallGuard;
+import cn.fww.icache.redis.RedisL2Cache;
+import cn.fww.icache.redis.RedisVersionStore;
+import cn.fww.icache.redis.VersionMessageListener;
 import cn.fww.icache.spring.SpringExt;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import scala.concurrent.duration.Duration;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -24,7 +50,7 @@ import java.util.concurrent.TimeUnit;
  * @author: Wen
  * @Date: create in 2017/11/30 14:39
  */
-public class InnerCacheTemplate implements InitializingBean {
+public class InnerCacheTemplate implements InitializingBean, DisposableBean {
 
     private static final Logger logger = LoggerFactory.getLogger(InnerCacheTemplate.class);
 
@@ -33,16 +59,226 @@ public class InnerCacheTemplate implements InitializingBean {
     private ActorSystem actorSystem;
 
     /**
-     * 删除时间间隔
+     * 过期时间轮推进间隔(时间轮最细精度约1秒)
      */
-    private int expireInterval = 30000;
+    private int expireInterval = 1000;
     /**
-     * 删除时间间隔
+     * 检查版本时间间隔
      */
     private int checkVersionInterval = 60000;
+    /**
+     * 开启版本推送后，定时检查只作为兜底，间隔放宽
+     */
+    private int checkVersionBackstopInterval = 600000;
 
     private String cacheVersionNamespace;
 
+    /**
+     * 是否通过redis发布订阅推送版本更新
+     */
+    private boolean versionPushEnabled = true;
+    /**
+     * 版本更新频道，默认为版本命名空间加":channel"
+     */
+    private String versionChannel;
+
+    private RedisMessageListenerContainer versionListenerContainer;
+
+    /**
+     * 版本命名空间分桶数量，定时检查只下载变更过的桶
+     */
+    private int versionBucketCount = 1;
+    /**
+     * 每隔多少次定时检查下载一次全部版本号，并检查全部key的redis缓存是否存在，0表示从不(只在第一次检查)
+     */
+    private int versionFullCheckCycles = 10;
+    /**
+     * 读取版本号时HSCAN每页的数量
+     */
+    private int versionScanPageSize = 1000;
+
+    private volatile RedisVersionStore versionStore;
+
+    /**
+     * 定时检查时每批检查redis数据是否存在的key数量(管道执行)，小于2时逐个检查
+     */
+    private int existCheckBatchSize = 200;
+
+    private final VersionCheckStats versionCheckStats = new VersionCheckStats();
+
+    /**
+     * 等待登记到redis的默认版本号
+     */
+    private final ConcurrentLinkedQueue<String> pendingVersionKeys = new ConcurrentLinkedQueue<>();
+    /**
+     * 默认版本号批量登记的间隔
+     */
+    private int versionRegisterInterval = 100;
+    /**
+     * 每批登记的key数量
+     */
+    private int versionRegisterBatchSize = 500;
+
+    /**
+     * redis熔断：连续失败多少次后熔断
+     */
+    private int redisMaxFailures = 5;
+    /**
+     * 单次调用超过这个时间(毫秒)记录慢调用日志。慢调用不算作失败，熔断只统计redis抛出的异常
+     * (连接或读取超时由redis客户端的超时设置抛出异常)；整个命名空间的扫描不按这个时间判断
+     */
+    private long redisCallTimeout = 1000;
+    /**
+     * 熔断多久(毫秒)后尝试恢复
+     */
+    private long redisResetTimeout = 30000;
+
+    private volatile RedisCallGuard redisCallGuard;
+
+    /**
+     * 是否启用redis二级缓存(只缓存带版本号的数据)
+     */
+    private boolean l2Enabled = false;
+    /**
+     * 二级缓存key前缀，默认为版本命名空间加":l2:"
+     */
+    private String l2KeyPrefix;
+    /**
+     * 没有设置ttl的数据在二级缓存中的过期时间(毫秒)
+     */
+    private long l2Ttl = 600000;
+
+    private volatile RedisL2Cache l2Cache;
+
+    /**
+     * 默认区域最多缓存多少数据
+     */
+    private long maximumSize = 100000;
+    /**
+     * 默认区域按权重(估算的字节数)限制容量，大于0时代替maximumSize
+     */
+    private long maximumWeight = 0;
+    /**
+     * 默认区域的权重计算，为null时使用{@link DefaultWeigher}
+     */
+    private Weigher weigher;
+    /**
+     * 默认区域中没有指定ttl的数据的缓存时间(毫秒)，-1为随应用的生命周期
+     */
+    private int defaultTtl = -1;
+    /**
+     * 默认区域的淘汰策略
+     */
+    private EvictionPolicy evictionPolicy = EvictionPolicy.TINY_LFU;
+    /**
+     * 其他命名区域，注解通过region属性选择
+     */
+    private List<CacheRegionConfig> regions = new ArrayList<>();
+
+    /**
+     * 缓存值的编解码器，二级缓存和堆外存储使用
+     */
+    private Codec codec = new BinaryCodec();
+
+    /**
+     * 默认区域缓存值的存放方式
+     */
+    private StorageMode storageMode = StorageMode.HEAP;
+    /**
+     * 默认区域的堆外内存上限(字节)
+     */
+    private long offHeapCapacity = 256L * 1024 * 1024;
+    /**
+     * 堆外内存每块大小(字节)，也是单个值的上限，更大的值放在堆上
+     */
+    private int offHeapSlabSize = 4 * 1024 * 1024;
+    /**
+     * 堆外数据读取多少次后缓存解码的对象，0为不缓存
+     */
+    private int offHeapHotReadThreshold = 0;
+
+    /**
+     * 默认区域是否启用磁盘溢出层，被淘汰的数据写入内存映射的段文件
+     */
+    private boolean diskOverflowEnabled = false;
+    /**
+     * 段文件目录，每个区域一个子目录。默认为本进程在临时目录下新建的icache-disk-*目录，
+     * 指定时不能与其他进程共用
+     */
+    private String diskDirectory;
+    /**
+     * 每个区域的磁盘占用上限(字节)
+     */
+    private long diskCapacity = 1024L * 1024 * 1024;
+    /**
+     * 每个段文件大小(字节)
+     */
+    private int diskSegmentSize = 64 * 1024 * 1024;
+    /**
+     * 段内有效数据占比低于多少时压缩
+     */
+    private double diskCompactionThreshold = 0.5d;
+    /**
+     * 压缩检查间隔
+     */
+    private long diskCompactionInterval = 30000;
+    /**
+     * 被淘汰数据写盘的间隔
+     */
+    private int diskFlushInterval = 100;
+
+    private volatile TieredStorage tieredStorage;
+
+    /**
+     * 是否启用本地缓存快照，启动时加载，定时及关闭时写入
+     */
+    private boolean snapshotEnabled = false;
+    /**
+     * 快照文件，默认为临时目录下的icache-{命名空间}.snapshot。同一个快照文件只能被一个进程使用，
+     * 已被其他进程使用时不启用快照
+     */
+    private String snapshotFile;
+    /**
+     * 定时写入快照的间隔
+     */
+    private long snapshotInterval = 300000;
+
+    private volatile SnapshotManager snapshotManager;
+
+    /**
+     * 启动时是否已从redis加载了版本号
+     */
+    private volatile boolean versionsLoaded;
+
+    /**
+     * 提前刷新的线程数
+     */
+    private int refreshThreads = 2;
+    /**
+     * 等待执行的提前刷新任务上限，超过时放弃刷新，继续使用当前值
+     */
+    private int refreshQueueSize = 1000;
+
+    private volatile CacheRefresher cacheRefresher;
+    /**
+     * 初始化数据集的加载方法，版本更新时重新加载整个数据集
+     */
+    private final ConcurrentHashMap<String, Callable<InitDataset>> datasetLoaders = new ConcurrentHashMap<>();
+
+    /**
+     * 版本更新时是否在新值加载完成前继续使用旧值，开启后不再出现删除到重新加载之间全部回源的空档
+     */
+    private boolean staleWhileRevalidate = false;
+    /**
+     * 旧值最多继续使用多久(毫秒)，超过后按未命中处理
+     */
+    private long maxStaleness = 5000;
+
+    /**
+     * 等待其他线程加载同一个key的超时时间，超时后自行加载
+     */
+    private long loadWaitTimeout = 3000;
+
     /**
      * 默认版本号(必须为数字)
      */
@@ -52,58 +288,485 @@ public class InnerCacheTemplate implements InitializingBean {
 
     private final String CHECK_CACHE_VERSION_ACTOR = "checkCacheVersionActor";
 
+    private final String VERSION_REGISTER_ACTOR = "versionRegisterActor";
+
+    private final String DISK_STORE_ACTOR = "diskStoreActor";
+
+    private final String SNAPSHOT_ACTOR = "snapshotActor";
+
     @Autowired
     private SpringExt springExt;
 
-    @Override
-    public void afterPropertiesSet() throws Exception {
-        loadVersionToRedis();
-        startUpSchedule();
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        initStorage();
+        loadVersionToRedis();
+        loadSnapshot();
+        if (versionPushEnabled) {
+            subscribeVersionChannel();
+        }
+        startUpSchedule();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (versionListenerContainer != null) {
+            versionListenerContainer.destroy();
+        }
+        flushVersionRegistration();
+        if (snapshotManager != null) {
+            snapshotManager.write();
+            snapshotManager.close();
+        }
+        if (cacheRefresher != null) {
+            cacheRefresher.shutdown();
+        }
+        if (tieredStorage != null) {
+            tieredStorage.close();
+        }
+    }
+
+    public boolean put(String key, Object value, boolean isVersion) {
+        return put(key, value, -1, isVersion);
+    }
+
+    public boolean put(String key, Object value, int ttl, boolean isVersion) {
+        return put(null, key, value, ttl, isVersion);
+    }
+
+    /**
+     * 添加缓存到指定区域
+     *
+     * @param region    区域名称，为空时使用默认区域
+     * @param key
+     * @param value
+     * @param ttl       -1时使用区域的默认ttl
+     * @param isVersion
+     * @return
+     */
+    public boolean put(String region, String key, Object value, int ttl, boolean isVersion) {
+        long version = isVersion ? resolveVersion(key) : CacheObject.NO_VERSION;
+        return InnerCache.region(region).put(key, value, ttl, version);
+    }
+
+    /**
+     * 按调用方给定的版本号添加缓存。版本号应在开始加载数据前取得，加载期间版本被更新时写入的数据会被作废，
+     * 不会把旧数据记成新版本
+     *
+     * @param region  区域名称，为空时使用默认区域
+     * @param key
+     * @param value
+     * @param ttl     -1时使用区域的默认ttl
+     * @param version 加载前的版本号，不带版本为{@link CacheObject#NO_VERSION}
+     * @return
+     */
+    public boolean putVersioned(String region, String key, Object value, int ttl, long version) {
+        return InnerCache.region(region).put(key, value, ttl, version);
+    }
+
+    /**
+     * 获取当前版本号，没有时使用默认版本号
+     *
+     * @param key
+     * @return
+     */
+    public long resolveVersion(String key) {
+        Long currentVersion = InnerCache.getVersion(key);
+        if (currentVersion != null) {
+            return currentVersion;
+        }
+        // 先使用默认版本号，异步登记到redis，redis中已有更新的版本号时再作废
+        long version = Long.parseLong(defaultVersion);
+        Long existing = InnerCache.putToVersionIfAbsent(key, version);
+        if (existing != null) {
+            return existing;
+        }
+        pendingVersionKeys.offer(key);
+        return version;
+    }
+
+    public Object get(String key) {
+        return get(null, key);
+    }
+
+    public Object get(String region, String key) {
+        Object value = lookup(region, key);
+        return value == NullValue.INSTANCE ? null : value;
+    }
+
+    /**
+     * 获取缓存，缓存的null结果返回{@link NullValue#INSTANCE}，没有缓存返回null
+     *
+     * @param key
+     * @return
+     */
+    public Object lookup(String key) {
+        return InnerCache.get(key);
+    }
+
+    /**
+     * 从指定区域获取缓存，缓存的null结果返回{@link NullValue#INSTANCE}，没有缓存返回null
+     *
+     * @param region 区域名称，为空时使用默认区域
+     * @param key
+     * @return
+     */
+    public Object lookup(String region, String key) {
+        return InnerCache.region(region).get(key);
+    }
+
+    /**
+     * 缓存数据是否需要刷新：写入后已超过刷新时间，或版本已更新正在使用旧值
+     *
+     * @param region
+     * @param key
+     * @param refreshAfter 写入多久后需要刷新(毫秒)，小于等于0时只看是否过时
+     * @return
+     */
+    public boolean needsRefresh(String region, String key, long refreshAfter) {
+        return InnerCache.region(region).needsRefresh(key, refreshAfter);
+    }
+
+    /**
+     * 在刷新线程池中异步执行刷新任务。同一区域的同一个key已在刷新时不再提交，队列满时放弃
+     *
+     * @param region 统计记在该区域
+     * @param key
+     * @param task   重新加载并写入缓存
+     * @return 是否提交了任务
+     */
+    public boolean refreshAsync(String region, String key, Runnable task) {
+        return getCacheRefresher().refresh(region, key, task);
+    }
+
+    private CacheRefresher getCacheRefresher() {
+        CacheRefresher refresher = cacheRefresher;
+        if (refresher == null) {
+            synchronized (this) {
+                refresher = cacheRefresher;
+                if (refresher == null) {
+                    refresher = new CacheRefresher(refreshThreads, refreshQueueSize);
+                    cacheRefresher = refresher;
+                }
+            }
+        }
+        return refresher;
+    }
+
+    /**
+     * 删除缓存，key在各区域中都删除
+     *
+     * @param key
+     */
+    public void remove(String key) {
+        for (CacheRegion region : InnerCache.getRegions()) {
+            region.remove(key);
+        }
+    }
+
+    /**
+     * 删除指定区域的缓存
+     *
+     * @param region
+     * @param key
+     */
+    public void remove(String region, String key) {
+        InnerCache.region(region).remove(key);
+    }
+
+    /**
+     * 从二级缓存读取指定版本的值，未启用、没有或者redis不可用时返回null
+     *
+     * @param key
+     * @param version
+     * @return 缓存的null结果返回{@link NullValue#INSTANCE}
+     */
+    public Object getFromL2(final String key, final long version) {
+        return getFromL2(null, key, version);
+    }
+
+    /**
+     * 同{@link #getFromL2(String, long)}，统计记在指定区域
+     *
+     * @param region
+     * @param key
+     * @param version
+     * @return
+     */
+    public Object getFromL2(String region, final String key, final long version) {
+        if (!l2Enabled) {
+            return null;
+        }
+        try {
+            Object value = callRedis(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return getL2Cache().get(key, version);
+                }
+            });
+            InnerCache.region(region).getStats().recordL2Lookup(value != null);
+            return value;
+        } catch (Exception e) {
+            logger.warn("读取二级缓存失败。key={},version={},{}", key, version, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 先读本地缓存，没有的带版本号的key用一次MGET从二级缓存读取，读到的放到本地缓存
+     *
+     * @param keys
+     * @param ttl  从二级缓存读到的数据在本地的过期时间
+     * @return 读到的数据，缓存的null结果为{@link NullValue#INSTANCE}
+     */
+    public Map<String, Object> lookupAll(List<String> keys, int ttl) {
+        return lookupAll(null, keys, ttl);
+    }
+
+    /**
+     * 同{@link #lookupAll(List, int)}，读写指定区域
+     *
+     * @param region 区域名称，为空时使用默认区域
+     * @param keys
+     * @param ttl
+     * @return
+     */
+    public Map<String, Object> lookupAll(String region, List<String> keys, int ttl) {
+        CacheRegion cacheRegion = InnerCache.region(region);
+        Map<String, Object> result = new HashMap<>();
+        final List<String> missKeys = new ArrayList<>();
+        final List<Long> missVersions = new ArrayList<>();
+        for (String key : keys) {
+            Object value = cacheRegion.get(key);
+            if (value != null) {
+                result.put(key, value);
+            } else if (l2Enabled) {
+                Long version = InnerCache.getVersion(key);
+                if (version != null) {
+                    missKeys.add(key);
+                    missVersions.add(version);
+                }
+            }
+        }
+        if (missKeys.isEmpty()) {
+            return result;
+        }
+        try {
+            List<Object> values = callRedis(new Callable<List<Object>>() {
+                @Override
+                public List<Object> call() {
+                    return getL2Cache().getAll(missKeys, missVersions);
+                }
+            });
+            for (int i = 0; i < missKeys.size(); i++) {
+                Object value = values.get(i);
+                cacheRegion.getStats().recordL2Lookup(value != null);
+                if (value != null) {
+                    cacheRegion.put(missKeys.get(i), value, ttl, missVersions.get(i));
+                    result.put(missKeys.get(i), value);
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("批量读取二级缓存失败。{}", e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 把本节点算出的值写到二级缓存，其他节点不用再算；写入失败不影响本地缓存
+     *
+     * @param key
+     * @param version 开始计算时的版本号
+     * @param value
+     * @param ttl     过期时间(毫秒)，不大于0时使用默认的二级缓存过期时间
+     */
+    public void publishToL2(final String key, final long version, final Object value, int ttl) {
+        publishToL2(null, key, version, value, ttl);
+    }
+
+    /**
+     * 同{@link #publishToL2(String, long, Object, int)}，统计记在指定区域
+     *
+     * @param region
+     * @param key
+     * @param version
+     * @param value
+     * @param ttl
+     */
+    public void publishToL2(String region, final String key, final long version, final Object value, int ttl) {
+        if (!l2Enabled) {
+            return;
+        }
+        final long l2ExpireTime = ttl > 0 ? ttl : l2Ttl;
+        final byte[] data;
+        try {
+            data = getL2Cache().encode(value);
+        } catch (CodecException e) {
+            logger.warn("值无法编码，不写入二级缓存。key={},{}", key, e.getMessage());
+            return;
+        }
+        try {
+            callRedis(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    getL2Cache().put(key, version, data, l2ExpireTime);
+                    return null;
+                }
+            });
+            InnerCache.region(region).getStats().recordL2Put();
+        } catch (Exception e) {
+            logger.warn("写入二级缓存失败。key={},version={},{}", key, version, e.getMessage());
+        }
+    }
+
+    public boolean isL2Enabled() {
+        return l2Enabled;
+    }
+
+    /**
+     * 本地版本号更新为最新版本，同时作废旧版本的缓存(开启staleWhileRevalidate时旧值标记为过时，新值写入前继续使用)
+     *
+     * @param key
+     * @param version
+     * @return 原来的版本号
+     */
+    public Long refreshVersion(String key, long version) {
+        return InnerCache.updateVersion(key, version);
+    }
+
+    /**
+     * 获取默认区域的缓存统计信息
+     *
+     * @return
+     */
+    public CacheStats getStats() {
+        return InnerCache.getStats();
+    }
+
+    /**
+     * 获取指定区域的缓存统计信息
+     *
+     * @param region
+     * @return 区域不存在时返回null
+     */
+    public CacheStats getStats(String region) {
+        CacheRegion cacheRegion = InnerCache.getRegion(region);
+        return cacheRegion != null ? cacheRegion.getStats() : null;
+    }
+
+    /**
+     * 默认区域因容量限制被淘汰的缓存数量
+     *
+     * @return
+     */
+    public long getEvictionCount() {
+        return InnerCache.getStats().getEvictionCount();
+    }
+
+    /**
+     * 获取redis中该项目的版本数据
+     *
+     * @return
+     */
+    public Map<String, Long> getAllVersion() {
+        return callRedisBulk(new Callable<Map<String, Long>>() {
+            @Override
+            public Map<String, Long> call() {
+                return getVersionStore().entries();
+            }
+        });
+    }
+
+    /**
+     * 获取上次检查之后变更过的桶里的版本数据，只能在检查版本的actor里调用
+     *
+     * @return
+     */
+    public Map<String, Long> getChangedVersion() {
+        final RedisVersionStore store = getVersionStore();
+        Map<String, Long> versions = callRedisBulk(new Callable<Map<String, Long>>() {
+            @Override
+            public Map<String, Long> call() {
+                return store.changedEntries();
+            }
+        });
+        versionCheckStats.recordRoundTrips(store.getLastRoundTrips());
+        return versions;
+    }
+
+    /**
+     * 上次获取变更版本时是否下载了全部的桶，只能在检查版本的actor里调用
+     *
+     * @return
+     */
+    public boolean isLastVersionCheckFull() {
+        return getVersionStore().isLastCheckFull();
     }
 
-    public boolean put(String key, Object value, boolean isVersion) {
-        return put(key, value, -1, isVersion);
+    /**
+     * 登记数据集的加载方法
+     *
+     * @param name
+     * @param loader 每次调用都完整加载一个新数据集
+     */
+    public void registerDataset(String name, Callable<InitDataset> loader) {
+        datasetLoaders.put(name, loader);
     }
 
-    public boolean put(String key, Object value, int ttl, boolean isVersion) {
-        if (isVersion) {
-            String version = InnerCache.getVersion(key);
-            if (StringUtils.isNotBlank(version)) {
-                key += version;
-            } else {
-                // 落地版本信息
-                stringRedisTemplate.opsForHash().put(cacheVersionNamespace, key, defaultVersion);
-                // 放到缓存中去
-                InnerCache.putToVersion(key, defaultVersion);
-                key += defaultVersion;
-            }
-        }
-        return InnerCache.put(key, value, ttl, isVersion);
+    /**
+     * 发布数据集，整体替换旧数据集
+     *
+     * @param dataset
+     */
+    public void publishDataset(InitDataset dataset) {
+        InitDataset old = InnerCache.publishDataset(dataset);
+        logger.info("发布数据集{}，{}条数据，加载耗时{}ms，替换{}", dataset.getName(), dataset.size(),
+                dataset.getLoadMillis(), old);
     }
 
-    public Object get(String key) {
-        String version = InnerCache.getVersion(key);
-        if (StringUtils.isNotBlank(version)) {
-            key += version;
-        }
-        return InnerCache.get(key);
+    /**
+     * 获取数据集
+     *
+     * @param name
+     * @return 没有加载时返回null
+     */
+    public InitDataset getDataset(String name) {
+        return InnerCache.getDataset(name);
     }
 
-    public void remove(String key) {
-        String version = InnerCache.getVersion(key);
-        if (StringUtils.isNotBlank(version)) {
-            key += version;
+    /**
+     * 异步重新加载整个数据集，加载完成前读取方继续使用旧数据集；加载失败时保留旧数据集
+     *
+     * @param name
+     * @return 是否提交了加载任务
+     */
+    public boolean reloadDataset(final String name) {
+        final Callable<InitDataset> loader = datasetLoaders.get(name);
+        if (loader == null) {
+            return false;
         }
-        InnerCache.remove(key);
+        return refreshAsync(InnerCache.DEFAULT_REGION, "dataset:" + name, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    publishDataset(loader.call());
+                } catch (Exception e) {
+                    logger.warn("重新加载数据集{}出错，继续使用旧数据集", name, e);
+                }
+            }
+        });
     }
 
     /**
-     * 获取redis中该项目的版本数据
+     * key属于某个数据集时重新加载该数据集
      *
-     * @return
+     * @param key
      */
-    public Map<Object, Object> getAllVersion() {
-        return stringRedisTemplate.opsForHash().entries(cacheVersionNamespace);
+    public void reloadDatasetOf(String key) {
+        String name = InnerCache.getDatasetName(key);
+        if (name != null) {
+            reloadDataset(name);
+        }
     }
 
     /**
@@ -133,18 +796,146 @@ public class InnerCacheTemplate implements InitializingBean {
      * @param key
      * @return
      */
-    public boolean isExistRedisCache(String key) {
-        return stringRedisTemplate.hasKey(key);
+    public boolean isExistRedisCache(final String key) {
+        return callRedis(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return stringRedisTemplate.hasKey(key);
+            }
+        });
+    }
+
+    /**
+     * 批量查找redis中不存在数据的key，每批在一个管道里执行
+     *
+     * @param keys
+     * @return 不存在的key
+     */
+    public List<String> findMissingRedisCache(Collection<String> keys) {
+        List<String> missing = new ArrayList<>();
+        if (existCheckBatchSize < 2) {
+            for (String key : keys) {
+                if (!isExistRedisCache(key)) {
+                    missing.add(key);
+                }
+            }
+            versionCheckStats.recordRoundTrips(keys.size());
+            return missing;
+        }
+        final List<String> batch = new ArrayList<>(existCheckBatchSize);
+        Iterator<String> iterator = keys.iterator();
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            if (batch.size() == existCheckBatchSize || !iterator.hasNext()) {
+                List<Object> results = callRedisBulk(new Callable<List<Object>>() {
+                    @Override
+                    public List<Object> call() {
+                        return stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                            @Override
+                            @SuppressWarnings("unchecked")
+                            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                                for (String key : batch) {
+                                    ((RedisOperations<String, V>) operations).hasKey(key);
+                                }
+                                return null;
+                            }
+                        });
+                    }
+                });
+                for (int i = 0; i < batch.size(); i++) {
+                    if (!Boolean.TRUE.equals(results.get(i))) {
+                        missing.add(batch.get(i));
+                    }
+                }
+                versionCheckStats.recordRoundTrips(1);
+                batch.clear();
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * 记录一次定时版本检查
+     *
+     * @param nanos    耗时
+     * @param keyCount 检查的key数量
+     */
+    public void recordVersionCheck(long nanos, long keyCount) {
+        versionCheckStats.recordCheck(nanos, keyCount);
+    }
+
+    /**
+     * 定时版本检查的统计信息
+     *
+     * @return
+     */
+    public VersionCheckStats getVersionCheckStats() {
+        return versionCheckStats;
     }
 
     /**
-     * 更新版本号
+     * 更新版本号，本节点立即生效，并推送给其他节点
      *
      * @param key
      * @return
      */
-    public long updateVersion(String key) {
-        return stringRedisTemplate.opsForHash().increment(cacheVersionNamespace, key, 1);
+    public long updateVersion(final String key) {
+        final long version = callRedis(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return getVersionStore().increment(key);
+            }
+        });
+        InnerCache.advanceVersion(key, version);
+        if (versionPushEnabled) {
+            try {
+                callRedis(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        stringRedisTemplate.convertAndSend(getVersionChannel(), VersionMessageListener.encode(key, version));
+                        return null;
+                    }
+                });
+            } catch (Exception e) {
+                // 推送失败由定时检查兜底
+                logger.error("推送版本更新失败。key={},version={}", key, version, e);
+            }
+        }
+        return version;
+    }
+
+    /**
+     * 收到更新的版本号时作废本地旧版本缓存，版本号不比本地新时忽略
+     *
+     * @param key
+     * @param version
+     * @return 是否更新了
+     */
+    public boolean advanceVersion(String key, long version) {
+        return InnerCache.advanceVersion(key, version);
+    }
+
+    /**
+     * 版本更新后的通知：重新加载key所属的数据集，并通知该缓存对应的actor进行更新。
+     * 版本推送、定时检查和登记默认版本号都经过这里，一次版本更新只重新加载一次
+     *
+     * @param key
+     */
+    public void notifyActor(String key) {
+        reloadDatasetOf(key);
+        tellActor(key);
+    }
+
+    /**
+     * 只通知该缓存对应的actor进行更新，不重新加载数据集，用于redis缓存失效等版本没有变化的情况
+     *
+     * @param key
+     */
+    public void tellActor(String key) {
+        String actorPath = InnerCache.getActorPath(key);
+        if (StringUtils.isNotBlank(actorPath)) {
+            actorSystem.actorSelection("/user/" + actorPath).tell(ActorCommand.START, ActorRef.noSender());
+        }
     }
 
     /**
@@ -153,12 +944,208 @@ public class InnerCacheTemplate implements InitializingBean {
     public void loadVersionToRedis() {
         logger.info("初始化工作");
         // 把版本信息放到内存中
-        Map<Object, Object> cacheVersionMap = stringRedisTemplate.opsForHash().entries(cacheVersionNamespace);
-        for (Map.Entry<Object, Object> o : cacheVersionMap.entrySet()) {
-            InnerCache.putToVersion(o.getKey().toString(), o.getValue().toString());
+        long start = System.nanoTime();
+        int count;
+        try {
+            // 分页读取，边读边放到内存中
+            count = callRedisBulk(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return getVersionStore().scan(new RedisVersionStore.VersionHandler() {
+                        @Override
+                        public void handle(String key, long version) {
+                            InnerCache.putToVersion(key, version);
+                        }
+                    });
+                }
+            });
+        } catch (Exception e) {
+            // redis不可用时先使用本地版本号，登记和定时检查会再同步
+            logger.error("从redis加载版本信息失败", e);
+            return;
+        }
+        versionsLoaded = true;
+        logger.info("从redis加载了{}个版本号，耗时{}ms", count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * 启用快照时加载上次的快照预热本地缓存，需在加载版本号之后调用
+     */
+    protected void loadSnapshot() {
+        if (!snapshotEnabled) {
+            return;
+        }
+        SnapshotManager manager = new SnapshotManager(codec, snapshotFile != null ? new File(snapshotFile)
+                : SnapshotManager.defaultFile(cacheVersionNamespace));
+        if (manager.open(versionsLoaded)) {
+            snapshotManager = manager;
+        }
+    }
+
+    /**
+     * 写入快照，没有启用时不处理
+     */
+    public void writeSnapshot() {
+        SnapshotManager manager = snapshotManager;
+        if (manager != null) {
+            manager.write();
+        }
+    }
+
+    /**
+     * 本地缓存快照，可查看启动加载耗时等信息
+     *
+     * @return 没有启用时返回null
+     */
+    public CacheSnapshot getCacheSnapshot() {
+        SnapshotManager manager = snapshotManager;
+        return manager != null ? manager.getSnapshot() : null;
+    }
+
+    /**
+     * 把待登记的默认版本号批量写入redis。redis中已有更新的版本号时作废本地旧版本缓存，
+     * 写入失败的放回队列下次再写
+     */
+    public void flushVersionRegistration() {
+        final long version = Long.parseLong(defaultVersion);
+        while (!pendingVersionKeys.isEmpty()) {
+            final List<String> batch = new ArrayList<>(versionRegisterBatchSize);
+            String key;
+            while (batch.size() < versionRegisterBatchSize && (key = pendingVersionKeys.poll()) != null) {
+                batch.add(key);
+            }
+            Map<String, Long> versions;
+            try {
+                versions = callRedisBulk(new Callable<Map<String, Long>>() {
+                    @Override
+                    public Map<String, Long> call() {
+                        return getVersionStore().registerAll(batch, version);
+                    }
+                });
+            } catch (Exception e) {
+                pendingVersionKeys.addAll(batch);
+                logger.warn("登记默认版本号失败，{}个key等待下次登记。{}", pendingVersionKeys.size(), e.getMessage());
+                return;
+            }
+            for (Map.Entry<String, Long> o : versions.entrySet()) {
+                if (advanceVersion(o.getKey(), o.getValue())) {
+                    notifyActor(o.getKey());
+                }
+            }
+        }
+    }
+
+    private <T> T callRedis(Callable<T> call) {
+        return getRedisCallGuard().call(call);
+    }
+
+    private <T> T callRedisBulk(Callable<T> call) {
+        return getRedisCallGuard().callBulk(call);
+    }
+
+    private RedisCallGuard getRedisCallGuard() {
+        RedisCallGuard guard = redisCallGuard;
+        if (guard == null) {
+            synchronized (this) {
+                guard = redisCallGuard;
+                if (guard == null) {
+                    guard = new RedisCallGuard(actorSystem.scheduler(), redisMaxFailures, redisCallTimeout,
+                            redisResetTimeout);
+                    redisCallGuard = guard;
+                }
+            }
+        }
+        return guard;
+    }
+
+    private RedisL2Cache getL2Cache() {
+        RedisL2Cache cache = l2Cache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = l2Cache;
+                if (cache == null) {
+                    String prefix = l2KeyPrefix != null ? l2KeyPrefix : cacheVersionNamespace + ":l2:";
+                    cache = new RedisL2Cache(stringRedisTemplate, prefix, codec);
+                    l2Cache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    private RedisVersionStore getVersionStore() {
+        RedisVersionStore store = versionStore;
+        if (store == null) {
+            synchronized (this) {
+                store = versionStore;
+                if (store == null) {
+                    store = new RedisVersionStore(stringRedisTemplate, cacheVersionNamespace, versionBucketCount,
+                            versionFullCheckCycles, versionScanPageSize);
+                    versionStore = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * 按配置创建默认区域和命名区域，以及各自的堆外存储和磁盘溢出层
+     */
+    protected void initStorage() throws IOException {
+        InnerCache.setMaxStaleness(staleWhileRevalidate ? maxStaleness : 0);
+        CacheRegionConfig defaultConfig = new CacheRegionConfig(InnerCache.DEFAULT_REGION);
+        defaultConfig.setMaximumSize(maximumSize);
+        defaultConfig.setMaximumWeight(maximumWeight);
+        defaultConfig.setWeigher(weigher);
+        defaultConfig.setTtl(defaultTtl);
+        defaultConfig.setEvictionPolicy(evictionPolicy);
+        defaultConfig.setStorageMode(storageMode);
+        defaultConfig.setOffHeapCapacity(offHeapCapacity);
+        defaultConfig.setDiskOverflowEnabled(diskOverflowEnabled);
+        if (tieredStorage == null) {
+            tieredStorage = new TieredStorage(codec, offHeapSlabSize, offHeapHotReadThreshold, diskDirectory,
+                    diskCapacity, diskSegmentSize, diskCompactionThreshold, diskCompactionInterval);
+        }
+        tieredStorage.createRegion(defaultConfig);
+        for (CacheRegionConfig config : regions) {
+            if (StringUtils.isBlank(config.getName()) || InnerCache.DEFAULT_REGION.equals(config.getName())) {
+                throw new IllegalArgumentException("缓存区域名称不能为空或" + InnerCache.DEFAULT_REGION);
+            }
+            tieredStorage.createRegion(config);
         }
     }
 
+    /**
+     * 默认区域的磁盘溢出层
+     *
+     * @return 没有启用时返回null
+     */
+    public DiskStore getDiskStore() {
+        return InnerCache.getDiskStore();
+    }
+
+    /**
+     * 获取区域
+     *
+     * @param name
+     * @return 不存在时返回null
+     */
+    public CacheRegion getRegion(String name) {
+        return InnerCache.getRegion(name);
+    }
+
+    /**
+     * 订阅版本更新频道
+     */
+    private void subscribeVersionChannel() {
+        versionListenerContainer = new RedisMessageListenerContainer();
+        versionListenerContainer.setConnectionFactory(stringRedisTemplate.getConnectionFactory());
+        versionListenerContainer.addMessageListener(new VersionMessageListener(this), new ChannelTopic(getVersionChannel()));
+        versionListenerContainer.afterPropertiesSet();
+        versionListenerContainer.start();
+        logger.info("订阅版本更新频道{}", getVersionChannel());
+    }
+
     /**
      * 开启调度任务
      */
@@ -175,7 +1162,36 @@ public class InnerCacheTemplate implements InitializingBean {
                 inbox.send(cacheExpiredActor, ActorCommand.START);
             }
         }, actorSystem.dispatcher());
-        actorSystem.scheduler().schedule(Duration.create(0, TimeUnit.MILLISECONDS), Duration.create(checkVersionInterval, TimeUnit.MILLISECONDS), new Runnable() {
+        final ActorRef versionRegisterActor = actorSystem.actorOf(Props.create(VersionRegisterActor.class, this), VERSION_REGISTER_ACTOR);
+        inbox.watch(versionRegisterActor);
+        actorSystem.scheduler().schedule(Duration.create(versionRegisterInterval, TimeUnit.MILLISECONDS), Duration.create(versionRegisterInterval, TimeUnit.MILLISECONDS), new Runnable() {
+            @Override
+            public void run() {
+                inbox.send(versionRegisterActor, ActorCommand.START);
+            }
+        }, actorSystem.dispatcher());
+        if (tieredStorage != null && tieredStorage.hasDiskOverflow()) {
+            final ActorRef diskStoreActor = actorSystem.actorOf(Props.create(DiskStoreActor.class), DISK_STORE_ACTOR);
+            inbox.watch(diskStoreActor);
+            actorSystem.scheduler().schedule(Duration.create(diskFlushInterval, TimeUnit.MILLISECONDS), Duration.create(diskFlushInterval, TimeUnit.MILLISECONDS), new Runnable() {
+                @Override
+                public void run() {
+                    inbox.send(diskStoreActor, ActorCommand.START);
+                }
+            }, actorSystem.dispatcher());
+        }
+        if (snapshotManager != null) {
+            final ActorRef snapshotActor = actorSystem.actorOf(Props.create(SnapshotActor.class, this), SNAPSHOT_ACTOR);
+            inbox.watch(snapshotActor);
+            actorSystem.scheduler().schedule(Duration.create(snapshotInterval, TimeUnit.MILLISECONDS), Duration.create(snapshotInterval, TimeUnit.MILLISECONDS), new Runnable() {
+                @Override
+                public void run() {
+                    inbox.send(snapshotActor, ActorCommand.START);
+                }
+            }, actorSystem.dispatcher());
+        }
+        int versionInterval = versionPushEnabled ? checkVersionBackstopInterval : checkVersionInterval;
+        actorSystem.scheduler().schedule(Duration.create(0, TimeUnit.MILLISECONDS), Duration.create(versionInterval, TimeUnit.MILLISECONDS), new Runnable() {
             @Override
             public void run() {
                 inbox.send(checkCacheVersionActor, ActorCommand.START);
@@ -202,4 +1218,212 @@ public class InnerCacheTemplate implements InitializingBean {
     public void setCacheVersionNamespace(String cacheVersionNamespace) {
         this.cacheVersionNamespace = cacheVersionNamespace;
     }
+
+    public String getVersionChannel() {
+        return versionChannel != null ? versionChannel : cacheVersionNamespace + ":channel";
+    }
+
+    public void setVersionChannel(String versionChannel) {
+        this.versionChannel = versionChannel;
+    }
+
+    public void setVersionPushEnabled(boolean versionPushEnabled) {
+        this.versionPushEnabled = versionPushEnabled;
+    }
+
+    public void setCheckVersionBackstopInterval(int checkVersionBackstopInterval) {
+        this.checkVersionBackstopInterval = checkVersionBackstopInterval;
+    }
+
+    public void setVersionBucketCount(int versionBucketCount) {
+        this.versionBucketCount = versionBucketCount;
+    }
+
+    public void setVersionFullCheckCycles(int versionFullCheckCycles) {
+        this.versionFullCheckCycles = versionFullCheckCycles;
+    }
+
+    public void setL2Enabled(boolean l2Enabled) {
+        this.l2Enabled = l2Enabled;
+    }
+
+    public void setL2KeyPrefix(String l2KeyPrefix) {
+        this.l2KeyPrefix = l2KeyPrefix;
+    }
+
+    public void setL2Ttl(long l2Ttl) {
+        this.l2Ttl = l2Ttl;
+    }
+
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public void setMaximumWeight(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+    }
+
+    public void setWeigher(Weigher weigher) {
+        this.weigher = weigher;
+    }
+
+    public void setDefaultTtl(int defaultTtl) {
+        this.defaultTtl = defaultTtl;
+    }
+
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    public void setRegions(List<CacheRegionConfig> regions) {
+        this.regions = regions;
+    }
+
+    public void setStorageMode(StorageMode storageMode) {
+        this.storageMode = storageMode;
+    }
+
+    public void setOffHeapCapacity(long offHeapCapacity) {
+        this.offHeapCapacity = offHeapCapacity;
+    }
+
+    public void setOffHeapSlabSize(int offHeapSlabSize) {
+        this.offHeapSlabSize = offHeapSlabSize;
+    }
+
+    public void setOffHeapHotReadThreshold(int offHeapHotReadThreshold) {
+        this.offHeapHotReadThreshold = offHeapHotReadThreshold;
+    }
+
+    public void setDiskOverflowEnabled(boolean diskOverflowEnabled) {
+        this.diskOverflowEnabled = diskOverflowEnabled;
+    }
+
+    public void setDiskDirectory(String diskDirectory) {
+        this.diskDirectory = diskDirectory;
+    }
+
+    public void setDiskCapacity(long diskCapacity) {
+        this.diskCapacity = diskCapacity;
+    }
+
+    public void setDiskSegmentSize(int diskSegmentSize) {
+        this.diskSegmentSize = diskSegmentSize;
+    }
+
+    public void setDiskCompactionThreshold(double diskCompactionThreshold) {
+        this.diskCompactionThreshold = diskCompactionThreshold;
+    }
+
+    public void setDiskCompactionInterval(long diskCompactionInterval) {
+        this.diskCompactionInterval = diskCompactionInterval;
+    }
+
+    public void setDiskFlushInterval(int diskFlushInterval) {
+        this.diskFlushInterval = diskFlushInterval;
+    }
+
+    public void setSnapshotEnabled(boolean snapshotEnabled) {
+        this.snapshotEnabled = snapshotEnabled;
+    }
+
+    public void setSnapshotFile(String snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    public void setSnapshotInterval(long snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public void setCodec(Codec codec) {
+        this.codec = codec;
+    }
+
+    public void setVersionScanPageSize(int versionScanPageSize) {
+        this.versionScanPageSize = versionScanPageSize;
+    }
+
+    public void setExistCheckBatchSize(int existCheckBatchSize) {
+        this.existCheckBatchSize = existCheckBatchSize;
+    }
+
+    /**
+     * redis是否可用(熔断器没有打开)
+     *
+     * @return
+     */
+    public boolean isRedisAvailable() {
+        RedisCallGuard guard = redisCallGuard;
+        return guard == null || guard.isAvailable();
+    }
+
+    /**
+     * 等待登记到redis的默认版本号数量
+     *
+     * @return
+     */
+    public int getPendingVersionRegistrationCount() {
+        return pendingVersionKeys.size();
+    }
+
+    public void setVersionRegisterInterval(int versionRegisterInterval) {
+        this.versionRegisterInterval = versionRegisterInterval;
+    }
+
+    public void setVersionRegisterBatchSize(int versionRegisterBatchSize) {
+        this.versionRegisterBatchSize = versionRegisterBatchSize;
+    }
+
+    public void setRedisMaxFailures(int redisMaxFailures) {
+        this.redisMaxFailures = redisMaxFailures;
+    }
+
+    public void setRedisCallTimeout(long redisCallTimeout) {
+        this.redisCallTimeout = redisCallTimeout;
+    }
+
+    public void setRedisResetTimeout(long redisResetTimeout) {
+        this.redisResetTimeout = redisResetTimeout;
+    }
+
+    public void setRefreshThreads(int refreshThreads) {
+        this.refreshThreads = refreshThreads;
+    }
+
+    public void setRefreshQueueSize(int refreshQueueSize) {
+        this.refreshQueueSize = refreshQueueSize;
+    }
+
+    public boolean isStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    /**
+     * 版本更新后旧值的过时窗口
+     *
+     * @return 没有开启时仍返回配置值
+     */
+    public long getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    public void setMaxStaleness(long maxStaleness) {
+        this.maxStaleness = maxStaleness;
+    }
+
+    public long getLoadWaitTimeout() {
+        return loadWaitTimeout;
+    }
+
+    public void setLoadWaitTimeout(long loadWaitTimeout) {
+        this.loadWaitTimeout = loadWaitTimeout;
+    }
 }
@@ -0,0 +1,32 @@
+package cn.fww.icache;
+
+import java.io.Serializable;
+
+/**
+ * @description: 缓存null结果时使用的共享占位对象，用来区分"没有缓存"和"缓存了null"
+ * @author: Wen
+ * @date: create in 2018/1/23 14:12
+ */
+public final class NullValue implements Serializable {
+
+    private static final long serialVersionUID = -3825166536493713580L;
+
+    public static final NullValue INSTANCE = new NullValue();
+
+    private NullValue() {
+    }
+
+    /**
+     * 反序列化后仍使用同一个实例
+     *
+     * @return
+     */
+    private Object readResolve() {
+        return INSTANCE;
+    }
+
+    @Override
+    public String toString() {
+        return "null";
+    }
+}
@@ -0,0 +1,273 @@
+package cn.fww.icache;
+
+import cn.fww.icache.codec.Codec;
+import cn.fww.icache.codec.CodecException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @description: 堆外存储。值编码后写入按块(slab)申请的直接内存，块内按大小级别(相邻级别约1.25倍)切分，
+ * 释放的空间挂到所在级别的空闲链表上供同级别复用；堆上只保留{@link OffHeapValue}索引。
+ * 读取时在块的读锁内复制字节再解码，释放时持有块的写锁，读取方不会读到被复用的内存。
+ * 读取次数达到阈值的值缓存解码后的对象，热点数据不必每次解码。
+ * 编码失败、超过块大小或容量用完时返回null，由调用方放在堆上。
+ * @author: Wen
+ * @date: create in 2018/2/13 11:20
+ */
+public class OffHeapStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapStore.class);
+
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final double GROWTH_FACTOR = 1.25d;
+
+    private final Codec codec;
+    private final int slabSize;
+    private final int maxSlabs;
+    private final int hotReadThreshold;
+
+    private final int[] chunkSizes;
+    /**
+     * 各级别的空闲空间，元素为块序号(高32位)和偏移(低32位)
+     */
+    private final long[][] freeChunks;
+    private final int[] freeCounts;
+
+    private final ReentrantLock allocationLock = new ReentrantLock();
+    private final List<Slab> slabs = new ArrayList<>();
+    private Slab currentSlab;
+    private int currentPosition;
+
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong entryCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+
+    /**
+     * @param codec            值的编解码器
+     * @param capacity         堆外内存上限(字节)
+     * @param slabSize         每块大小(字节)，也是单个值的上限
+     * @param hotReadThreshold 读取多少次后缓存解码的对象，0为不缓存
+     */
+    public OffHeapStore(Codec codec, long capacity, int slabSize, int hotReadThreshold) {
+        this.codec = codec;
+        this.slabSize = Math.max(slabSize, MIN_CHUNK_SIZE);
+        this.maxSlabs = (int) Math.max(1, Math.min(Integer.MAX_VALUE, capacity / this.slabSize));
+        this.hotReadThreshold = hotReadThreshold;
+        List<Integer> sizes = new ArrayList<>();
+        int size = MIN_CHUNK_SIZE;
+        while (size < this.slabSize) {
+            sizes.add(size);
+            size = (int) Math.min(this.slabSize, ((long) Math.ceil(size * GROWTH_FACTOR) + 7) & ~7L);
+        }
+        sizes.add(this.slabSize);
+        this.chunkSizes = new int[sizes.size()];
+        for (int i = 0; i < chunkSizes.length; i++) {
+            chunkSizes[i] = sizes.get(i);
+        }
+        this.freeChunks = new long[chunkSizes.length][16];
+        this.freeCounts = new int[chunkSizes.length];
+    }
+
+    /**
+     * 编码后写入堆外内存
+     *
+     * @param value
+     * @return 放不下时返回null
+     */
+    OffHeapValue store(Object value) {
+        byte[] data;
+        try {
+            data = codec.encode(value);
+        } catch (CodecException e) {
+            logger.debug("值无法编码，放在堆上。{}", e.getMessage());
+            fallbackCount.incrementAndGet();
+            return null;
+        }
+        int sizeClass = sizeClassOf(data.length);
+        OffHeapValue offHeapValue = sizeClass < 0 ? null : allocate(sizeClass, data.length);
+        if (offHeapValue == null) {
+            fallbackCount.incrementAndGet();
+            return null;
+        }
+        ByteBuffer buffer = offHeapValue.slab.buffer.duplicate();
+        buffer.position(offHeapValue.offset);
+        buffer.put(data);
+        entryCount.incrementAndGet();
+        return offHeapValue;
+    }
+
+    /**
+     * 读取并解码
+     *
+     * @param offHeapValue
+     * @return 已被释放时返回null
+     */
+    Object load(OffHeapValue offHeapValue) {
+        Object decoded = offHeapValue.decoded;
+        if (decoded != null) {
+            return decoded;
+        }
+        byte[] data = copyBytes(offHeapValue);
+        if (data == null) {
+            return null;
+        }
+        Object value = codec.decode(data, 0, data.length);
+        if (hotReadThreshold > 0 && ++offHeapValue.reads >= hotReadThreshold) {
+            offHeapValue.decoded = value;
+        }
+        return value;
+    }
+
+    /**
+     * 复制编码后的字节，不解码
+     *
+     * @param offHeapValue
+     * @return 已被释放时返回null
+     */
+    byte[] copyBytes(OffHeapValue offHeapValue) {
+        byte[] data = new byte[offHeapValue.length];
+        Slab slab = offHeapValue.slab;
+        slab.lock.readLock().lock();
+        try {
+            if (offHeapValue.released) {
+                return null;
+            }
+            ByteBuffer buffer = slab.buffer.duplicate();
+            buffer.position(offHeapValue.offset);
+            buffer.get(data);
+        } finally {
+            slab.lock.readLock().unlock();
+        }
+        return data;
+    }
+
+    /**
+     * 释放占用的空间，重复释放无影响
+     *
+     * @param offHeapValue
+     */
+    void release(OffHeapValue offHeapValue) {
+        Slab slab = offHeapValue.slab;
+        slab.lock.writeLock().lock();
+        try {
+            if (offHeapValue.released) {
+                return;
+            }
+            offHeapValue.released = true;
+        } finally {
+            slab.lock.writeLock().unlock();
+        }
+        offHeapValue.decoded = null;
+        int sizeClass = offHeapValue.sizeClass;
+        allocationLock.lock();
+        try {
+            if (freeCounts[sizeClass] == freeChunks[sizeClass].length) {
+                freeChunks[sizeClass] = Arrays.copyOf(freeChunks[sizeClass], freeCounts[sizeClass] << 1);
+            }
+            freeChunks[sizeClass][freeCounts[sizeClass]++] = ((long) slab.index << 32) | offHeapValue.offset;
+        } finally {
+            allocationLock.unlock();
+        }
+        usedBytes.addAndGet(-chunkSizes[sizeClass]);
+        entryCount.decrementAndGet();
+    }
+
+    private OffHeapValue allocate(int sizeClass, int length) {
+        int chunkSize = chunkSizes[sizeClass];
+        allocationLock.lock();
+        try {
+            Slab slab;
+            int offset;
+            if (freeCounts[sizeClass] > 0) {
+                long chunk = freeChunks[sizeClass][--freeCounts[sizeClass]];
+                slab = slabs.get((int) (chunk >>> 32));
+                offset = (int) chunk;
+            } else {
+                if (currentSlab == null || currentPosition + chunkSize > slabSize) {
+                    if (slabs.size() >= maxSlabs) {
+                        return null;
+                    }
+                    currentSlab = new Slab(this, slabs.size(), ByteBuffer.allocateDirect(slabSize));
+                    slabs.add(currentSlab);
+                    currentPosition = 0;
+                }
+                slab = currentSlab;
+                offset = currentPosition;
+                currentPosition += chunkSize;
+            }
+            usedBytes.addAndGet(chunkSize);
+            return new OffHeapValue(slab, offset, length, sizeClass);
+        } finally {
+            allocationLock.unlock();
+        }
+    }
+
+    private int sizeClassOf(int length) {
+        int index = Arrays.binarySearch(chunkSizes, length);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < chunkSizes.length ? index : -1;
+    }
+
+    /**
+     * 已申请的堆外内存(字节)
+     *
+     * @return
+     */
+    public long getAllocatedBytes() {
+        allocationLock.lock();
+        try {
+            return (long) slabs.size() * slabSize;
+        } finally {
+            allocationLock.unlock();
+        }
+    }
+
+    /**
+     * 正在使用的空间(字节，按级别大小计算)
+     *
+     * @return
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getCapacity() {
+        return (long) maxSlabs * slabSize;
+    }
+
+    public long getEntryCount() {
+        return entryCount.get();
+    }
+
+    /**
+     * 放不进堆外而放在堆上的次数
+     *
+     * @return
+     */
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    static final class Slab {
+        final OffHeapStore store;
+        final int index;
+        final ByteBuffer buffer;
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        Slab(OffHeapStore store, int index, ByteBuffer buffer) {
+            this.store = store;
+            this.index = index;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package cn.fww.icache;
+
+/**
+ * @description: 堆外存储的值在堆上的索引：所在的块、偏移和长度。
+ * 释放标记只在所在块的写锁内修改，读取方持有读锁时检查，保证不会读到被复用的内存。
+ * @author: Wen
+ * @date: create in 2018/2/13 10:40
+ */
+final class OffHeapValue {
+
+    final OffHeapStore.Slab slab;
+    final int offset;
+    final int length;
+    final int sizeClass;
+
+    /**
+     * 只在块锁内读写
+     */
+    boolean released;
+
+    /**
+     * 热点数据解码后的对象，读取次数达到阈值后缓存
+     */
+    volatile Object decoded;
+
+    /**
+     * 读取次数，并发下不精确
+     */
+    int reads;
+
+    OffHeapValue(OffHeapStore.Slab slab, int offset, int length, int sizeClass) {
+        this.slab = slab;
+        this.offset = offset;
+        this.length = length;
+        this.sizeClass = sizeClass;
+    }
+}
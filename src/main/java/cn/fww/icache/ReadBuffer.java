@@ -0,0 +1,91 @@
+package cn.fww.icache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @description: 读操作记录缓冲区。按线程分段的有损环形队列，读线程只做一次CAS，
+ * 缓冲区满或竞争失败时直接丢弃记录，由持有淘汰锁的线程批量回放。
+ * @author: Wen
+ * @date: create in 2018/1/15 14:06
+ */
+final class ReadBuffer {
+
+    static final int SUCCESS = 0;
+    static final int FAILED = 1;
+    static final int FULL = 2;
+
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+    private static final int RING_SIZE = 16;
+    private static final int RING_MASK = RING_SIZE - 1;
+
+    private final Ring[] rings;
+    private final int ringMask;
+
+    ReadBuffer() {
+        int count = 1 << -Integer.numberOfLeadingZeros(Math.max(4 * NCPU, 2) - 1);
+        rings = new Ring[count];
+        for (int i = 0; i < count; i++) {
+            rings[i] = new Ring();
+        }
+        ringMask = count - 1;
+    }
+
+    /**
+     * 记录一次读操作
+     *
+     * @param e
+     * @return SUCCESS/FAILED/FULL
+     */
+    int offer(CacheObject e) {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return rings[(h ^ (h >>> 16)) & ringMask].offer(e);
+    }
+
+    /**
+     * 回放所有记录，只能在持有淘汰锁时调用
+     *
+     * @param policy
+     */
+    void drainTo(WindowTinyLfuPolicy policy) {
+        for (Ring ring : rings) {
+            ring.drainTo(policy);
+        }
+    }
+
+    private static final class Ring {
+        private final AtomicReferenceArray<CacheObject> buffer = new AtomicReferenceArray<>(RING_SIZE);
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter;
+
+        int offer(CacheObject e) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            if (tail - head >= RING_SIZE) {
+                return FULL;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int) (tail & RING_MASK), e);
+                return SUCCESS;
+            }
+            return FAILED;
+        }
+
+        void drainTo(WindowTinyLfuPolicy policy) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & RING_MASK);
+                CacheObject e = buffer.get(index);
+                if (e == null) {
+                    // 写入者已占位但尚未发布，下次再回放
+                    break;
+                }
+                buffer.lazySet(index, null);
+                policy.onAccess(e);
+            }
+            readCounter = head;
+        }
+    }
+}
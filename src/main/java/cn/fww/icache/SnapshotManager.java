@@ -0,0 +1,106 @@
+package cn.fww.icache;
+
+import cn.fww.icache.codec.Codec;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * @description: 本地缓存快照的生命周期。启动时锁定快照文件并加载预热，定时及关闭时写入，关闭时释放锁；
+ * 快照文件已被其他进程使用或无法锁定时不启用快照，写入和关闭都不做处理
+ * @author: Wen
+ * @date: create in 2018/2/21 10:40
+ */
+public class SnapshotManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotManager.class);
+
+    private final Codec codec;
+
+    private final File file;
+
+    private volatile CacheSnapshot snapshot;
+
+    /**
+     * @param codec
+     * @param file  快照文件
+     */
+    public SnapshotManager(Codec codec, File file) {
+        this.codec = codec;
+        this.file = file;
+    }
+
+    /**
+     * 默认快照文件，临时目录下的icache-{命名空间}.snapshot
+     *
+     * @param namespace 版本命名空间
+     * @return
+     */
+    public static File defaultFile(String namespace) {
+        return new File(System.getProperty("java.io.tmpdir") + File.separator + "icache-"
+                + StringUtils.defaultString(namespace).replaceAll("[^A-Za-z0-9._-]", "_") + ".snapshot");
+    }
+
+    /**
+     * 锁定快照文件并加载上次的快照，需在加载版本号之后调用。加载失败时冷启动，快照仍然启用
+     *
+     * @param versionsLoaded 是否已从redis加载了版本号
+     * @return 是否启用了快照
+     */
+    public boolean open(boolean versionsLoaded) {
+        CacheSnapshot opened = new CacheSnapshot(codec, file);
+        try {
+            if (!opened.tryLock()) {
+                logger.error("缓存快照{}正被其他进程使用，不启用快照", opened.getFile());
+                return false;
+            }
+        } catch (IOException e) {
+            logger.error("无法锁定缓存快照{}，不启用快照", opened.getFile(), e);
+            return false;
+        }
+        snapshot = opened;
+        try {
+            opened.load(versionsLoaded);
+        } catch (Exception e) {
+            logger.error("加载缓存快照失败，冷启动", e);
+        }
+        return true;
+    }
+
+    /**
+     * 写入快照，没有启用时不处理
+     */
+    public void write() {
+        CacheSnapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.write();
+        } catch (Exception e) {
+            logger.error("写入缓存快照失败", e);
+        }
+    }
+
+    /**
+     * 释放快照文件的锁
+     */
+    public void close() {
+        CacheSnapshot current = snapshot;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * 当前使用的快照
+     *
+     * @return 没有启用时返回null
+     */
+    public CacheSnapshot getSnapshot() {
+        return snapshot;
+    }
+}
@@ -0,0 +1,19 @@
+package cn.fww.icache;
+
+/**
+ * @description: 缓存值的存放方式
+ * @author: Wen
+ * @date: create in 2018/2/13 10:05
+ */
+public enum StorageMode {
+
+    /**
+     * 值作为普通对象放在堆上
+     */
+    HEAP,
+
+    /**
+     * 值编码后放在堆外内存，堆上只保留位置索引，读取时解码
+     */
+    OFF_HEAP
+}
@@ -0,0 +1,127 @@
+package cn.fww.icache;
+
+import cn.fww.icache.codec.Codec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * @description: 缓存区域的存储层。按区域配置创建堆外存储和磁盘溢出层，并负责磁盘溢出层的释放。
+ * 没有指定段文件目录时，本进程在临时目录下新建一个icache-disk-*目录，每个区域一个子目录
+ * @author: Wen
+ * @date: create in 2018/2/21 10:15
+ */
+public class TieredStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(TieredStorage.class);
+
+    private final Codec codec;
+
+    private final int offHeapSlabSize;
+
+    private final int offHeapHotReadThreshold;
+
+    private final String diskDirectory;
+
+    private final long diskCapacity;
+
+    private final int diskSegmentSize;
+
+    private final double diskCompactionThreshold;
+
+    private final long diskCompactionInterval;
+
+    /**
+     * 本进程的默认段文件目录，第一次用到时创建
+     */
+    private File defaultDiskDirectory;
+
+    public TieredStorage(Codec codec, int offHeapSlabSize, int offHeapHotReadThreshold, String diskDirectory,
+                         long diskCapacity, int diskSegmentSize, double diskCompactionThreshold,
+                         long diskCompactionInterval) {
+        this.codec = codec;
+        this.offHeapSlabSize = offHeapSlabSize;
+        this.offHeapHotReadThreshold = offHeapHotReadThreshold;
+        this.diskDirectory = diskDirectory;
+        this.diskCapacity = diskCapacity;
+        this.diskSegmentSize = diskSegmentSize;
+        this.diskCompactionThreshold = diskCompactionThreshold;
+        this.diskCompactionInterval = diskCompactionInterval;
+    }
+
+    /**
+     * 按配置创建区域及其存储层，同名区域已存在时替换
+     *
+     * @param config
+     * @throws IOException 无法创建段文件目录时
+     */
+    public void createRegion(CacheRegionConfig config) throws IOException {
+        OffHeapStore offHeapStore = null;
+        if (config.getStorageMode() == StorageMode.OFF_HEAP) {
+            offHeapStore = new OffHeapStore(codec, config.getOffHeapCapacity(), offHeapSlabSize, offHeapHotReadThreshold);
+        }
+        DiskStore diskStore = null;
+        if (config.isDiskOverflowEnabled()) {
+            File directory;
+            if (diskDirectory != null) {
+                directory = new File(diskDirectory, config.getName());
+            } else {
+                directory = new File(defaultDiskDirectory(), config.getName());
+                directory.deleteOnExit();
+            }
+            // 同名区域重建时先释放旧区域占用的目录
+            closeDiskStore(config.getName());
+            diskStore = new DiskStore(codec, directory, diskCapacity, diskSegmentSize, diskCompactionThreshold,
+                    diskCompactionInterval);
+        } else {
+            closeDiskStore(config.getName());
+        }
+        InnerCache.createRegion(config, offHeapStore, diskStore);
+        logger.info("缓存区域{}：容量{}，权重上限{}，默认ttl {}，淘汰策略{}，存放方式{}，磁盘溢出{}", config.getName(),
+                config.getMaximumSize(), config.getMaximumWeight(), config.getTtl(), config.getEvictionPolicy(),
+                config.getStorageMode(), config.isDiskOverflowEnabled());
+    }
+
+    /**
+     * 是否有区域启用了磁盘溢出层
+     *
+     * @return
+     */
+    public boolean hasDiskOverflow() {
+        for (CacheRegion region : InnerCache.getRegions()) {
+            if (region.getDiskStore() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 关闭所有区域的磁盘溢出层
+     */
+    public void close() {
+        for (CacheRegion region : InnerCache.getRegions()) {
+            if (region.getDiskStore() != null) {
+                region.getDiskStore().close();
+            }
+        }
+    }
+
+    private void closeDiskStore(String region) {
+        CacheRegion old = InnerCache.getRegion(region);
+        if (old != null && old.getDiskStore() != null) {
+            old.getDiskStore().close();
+        }
+    }
+
+    private synchronized File defaultDiskDirectory() throws IOException {
+        if (defaultDiskDirectory == null) {
+            defaultDiskDirectory = Files.createTempDirectory("icache-disk-").toFile();
+            defaultDiskDirectory.deleteOnExit();
+        }
+        return defaultDiskDirectory;
+    }
+}
@@ -0,0 +1,148 @@
+package cn.fww.icache;
+
+/**
+ * @description: 分层时间轮，按过期时间把设置了ttl的缓存挂到不同精度的时间桶上(秒、分、时、天)。
+ * 推进时只处理走过的时间桶，过期的数据交给淘汰策略删除，未到期的降级到更精细的时间桶，
+ * 开销只与即将过期的数据量相关，而与缓存总量无关。只能在持有淘汰锁时调用。
+ * @author: Wen
+ * @date: create in 2018/1/17 11:08
+ */
+final class TimerWheel {
+
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    /**
+     * 各层时间桶的跨度(毫秒，取2的幂)：2^10、2^16、2^22、2^27、2^29，约1秒、65秒、70分钟、37小时、6.2天
+     */
+    private static final long[] SPANS = {
+            1L << 10,
+            1L << 16,
+            1L << 22,
+            1L << 27,
+            4L << 27,
+            4L << 27
+    };
+    private static final long[] SHIFT = {
+            Long.numberOfTrailingZeros(SPANS[0]),
+            Long.numberOfTrailingZeros(SPANS[1]),
+            Long.numberOfTrailingZeros(SPANS[2]),
+            Long.numberOfTrailingZeros(SPANS[3]),
+            Long.numberOfTrailingZeros(SPANS[4])
+    };
+
+    private final WindowTinyLfuPolicy policy;
+    private final CacheObject[][] wheel;
+
+    private long time;
+
+    TimerWheel(WindowTinyLfuPolicy policy, long currentTime) {
+        this.policy = policy;
+        this.time = currentTime;
+        this.wheel = new CacheObject[BUCKETS.length][];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new CacheObject[BUCKETS[i]];
+            for (int j = 0; j < wheel[i].length; j++) {
+                CacheObject sentinel = new CacheObject();
+                sentinel.prevInTimerOrder = sentinel;
+                sentinel.nextInTimerOrder = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * 推进时间轮到当前时间，处理所有走过的时间桶
+     *
+     * @param currentTime
+     */
+    void advance(long currentTime) {
+        long previousTime = time;
+        time = currentTime;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previousTime >>> SHIFT[i];
+            long currentTicks = currentTime >>> SHIFT[i];
+            if ((currentTicks - previousTicks) <= 0L) {
+                break;
+            }
+            expire(i, previousTicks, currentTicks - previousTicks);
+        }
+    }
+
+    /**
+     * 挂到对应的时间桶，已挂上的先摘下
+     *
+     * @param e
+     */
+    void schedule(CacheObject e) {
+        if (e.nextInTimerOrder != null) {
+            unlink(e);
+        }
+        // 已经过期的挂到当前时间桶，下次推进时处理
+        link(findBucket(Math.max(e.getExpireTime(), time)), e);
+    }
+
+    /**
+     * 从时间轮上摘下
+     *
+     * @param e
+     */
+    void deschedule(CacheObject e) {
+        if (e.nextInTimerOrder != null) {
+            unlink(e);
+        }
+    }
+
+    private void expire(int index, long previousTicks, long delta) {
+        CacheObject[] timerWheel = wheel[index];
+        int mask = timerWheel.length - 1;
+        int steps = (int) Math.min(1 + delta, timerWheel.length);
+        int start = (int) (previousTicks & mask);
+        int end = start + steps;
+        for (int i = start; i < end; i++) {
+            CacheObject sentinel = timerWheel[i & mask];
+            CacheObject node = sentinel.nextInTimerOrder;
+            sentinel.prevInTimerOrder = sentinel;
+            sentinel.nextInTimerOrder = sentinel;
+            while (node != sentinel) {
+                CacheObject next = node.nextInTimerOrder;
+                node.prevInTimerOrder = null;
+                node.nextInTimerOrder = null;
+                if (node.getExpireTime() - time > 0) {
+                    // 还没到期，重新挂到更精细的时间桶
+                    link(findBucket(node.getExpireTime()), node);
+                } else {
+                    policy.onExpire(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    private CacheObject findBucket(long expireTime) {
+        long duration = expireTime - time;
+        int length = wheel.length - 1;
+        for (int i = 0; i < length; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = expireTime >>> SHIFT[i];
+                int index = (int) (ticks & (wheel[i].length - 1));
+                return wheel[i][index];
+            }
+        }
+        return wheel[length][0];
+    }
+
+    private void link(CacheObject sentinel, CacheObject e) {
+        e.prevInTimerOrder = sentinel.prevInTimerOrder;
+        e.nextInTimerOrder = sentinel;
+        sentinel.prevInTimerOrder.nextInTimerOrder = e;
+        sentinel.prevInTimerOrder = e;
+    }
+
+    private void unlink(CacheObject e) {
+        CacheObject next = e.nextInTimerOrder;
+        CacheObject prev = e.prevInTimerOrder;
+        next.prevInTimerOrder = prev;
+        prev.nextInTimerOrder = next;
+        e.prevInTimerOrder = null;
+        e.nextInTimerOrder = null;
+    }
+}
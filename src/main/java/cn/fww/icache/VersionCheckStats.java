@@ -0,0 +1,76 @@
+package cn.fww.icache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @description: 定时版本检查的统计信息，记录每次检查的耗时和redis往返次数
+ * @author: Wen
+ * @date: create in 2018/2/8 10:05
+ */
+public class VersionCheckStats {
+
+    private final AtomicLong checkCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong totalRoundTrips = new AtomicLong();
+    /**
+     * 本次检查到目前为止的redis往返次数
+     */
+    private final AtomicLong pendingRoundTrips = new AtomicLong();
+
+    private volatile long lastNanos;
+    private volatile long lastRoundTrips;
+    private volatile long lastKeyCount;
+
+    void recordRoundTrips(long roundTrips) {
+        pendingRoundTrips.addAndGet(roundTrips);
+    }
+
+    void recordCheck(long nanos, long keyCount) {
+        long roundTrips = pendingRoundTrips.getAndSet(0);
+        checkCount.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        totalRoundTrips.addAndGet(roundTrips);
+        lastNanos = nanos;
+        lastRoundTrips = roundTrips;
+        lastKeyCount = keyCount;
+    }
+
+    public long getCheckCount() {
+        return checkCount.get();
+    }
+
+    public long getTotalRoundTrips() {
+        return totalRoundTrips.get();
+    }
+
+    public long getLastMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastNanos);
+    }
+
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    public long getLastRoundTrips() {
+        return lastRoundTrips;
+    }
+
+    public long getLastKeyCount() {
+        return lastKeyCount;
+    }
+
+    public long getAverageNanos() {
+        long count = checkCount.get();
+        return count == 0 ? 0 : totalNanos.get() / count;
+    }
+
+    @Override
+    public String toString() {
+        return "VersionCheckStats{checkCount=" + checkCount.get()
+                + ", lastMillis=" + getLastMillis()
+                + ", lastRoundTrips=" + lastRoundTrips
+                + ", lastKeyCount=" + lastKeyCount
+                + ", totalRoundTrips=" + totalRoundTrips.get() + "}";
+    }
+}
@@ -0,0 +1,18 @@
+package cn.fww.icache;
+
+/**
+ * @description: 计算缓存数据的权重(估算占用的字节数)，区域按权重总和限制容量时使用
+ * @author: Wen
+ * @date: create in 2018/2/17 10:10
+ */
+public interface Weigher {
+
+    /**
+     * 计算权重，写入时调用一次，不能有耗时操作
+     *
+     * @param key
+     * @param value
+     * @return 非负数
+     */
+    int weigh(String key, Object value);
+}
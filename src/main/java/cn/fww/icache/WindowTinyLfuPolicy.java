@@ -0,0 +1,417 @@
+package cn.fww.icache;
+
+import cn.fww.icache.common.SystemClock;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @description: W-TinyLFU淘汰策略。新数据先进入窗口LRU(1%)，窗口溢出的数据作为候选者
+ * 与主空间试用区的受害者比较访问频率，频率高者留下；主空间为分段LRU(试用区+保护区80%)。
+ * 读操作只写入有损缓冲区，链表调整统一在淘汰锁内批量执行，读路径没有全局锁。
+ * 设置了ttl的数据同时挂在时间轮上，由调度任务推进时间轮删除过期数据。
+ * 容量按权重计算，每条数据的权重在写入时确定(不限制权重的区域每条为1)，窗口、保护区和总量都按权重比较。
+ * 数据退出策略(删除、过期、淘汰)时释放其堆外内存；被淘汰的数据在释放前交给淘汰监听器(如磁盘溢出层)。
+ * @author: Wen
+ * @date: create in 2018/1/15 16:40
+ */
+final class WindowTinyLfuPolicy {
+
+    static final int UNLINKED = 0;
+    static final int WINDOW = 1;
+    static final int PROBATION = 2;
+    static final int PROTECTED = 3;
+    static final int RETIRED = 4;
+
+    static final double PERCENT_WINDOW = 0.01d;
+    private static final long MAXIMUM_SKETCH_SIZE = 1 << 20;
+    private static final double PERCENT_PROTECTED = 0.80d;
+
+    private final ConcurrentHashMap<String, CacheObject> data;
+    private final CacheStats stats;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ReadBuffer readBuffer = new ReadBuffer();
+    private final ConcurrentLinkedQueue<CacheObject> addBuffer = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<CacheObject> removeBuffer = new ConcurrentLinkedQueue<>();
+
+    private final AccessOrderDeque window = new AccessOrderDeque();
+    private final AccessOrderDeque probation = new AccessOrderDeque();
+    private final AccessOrderDeque protectedDeque = new AccessOrderDeque();
+
+    private final TimerWheel timerWheel;
+    private final FrequencySketch sketch;
+    private final long maximum;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    private volatile EvictionListener evictionListener;
+
+    private long size;
+    private long weightedSize;
+    private long windowWeightedSize;
+    private long protectedWeightedSize;
+
+    WindowTinyLfuPolicy(long maximum, ConcurrentHashMap<String, CacheObject> data, CacheStats stats) {
+        this(maximum, PERCENT_WINDOW, data, stats);
+    }
+
+    /**
+     * @param maximum       最大权重总和
+     * @param percentWindow 窗口占容量的比例，为1时退化为LRU
+     * @param data
+     * @param stats
+     */
+    WindowTinyLfuPolicy(long maximum, double percentWindow, ConcurrentHashMap<String, CacheObject> data, CacheStats stats) {
+        this.maximum = maximum;
+        this.windowMaximum = Math.max(1, (long) (maximum * percentWindow));
+        this.protectedMaximum = (long) ((maximum - windowMaximum) * PERCENT_PROTECTED);
+        // 按权重限制时最大权重不是数据量，频率估算器的大小设个上限
+        this.sketch = new FrequencySketch(Math.min(maximum, MAXIMUM_SKETCH_SIZE));
+        this.timerWheel = new TimerWheel(this, SystemClock.now());
+        this.data = data;
+        this.stats = stats;
+    }
+
+    /**
+     * 设置淘汰监听器
+     *
+     * @param evictionListener 为null时不通知
+     */
+    void setEvictionListener(EvictionListener evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * 读命中后记录访问，缓冲区满时尝试回放
+     *
+     * @param cacheObject
+     */
+    void afterRead(CacheObject cacheObject) {
+        if (readBuffer.offer(cacheObject) == ReadBuffer.FULL && evictionLock.tryLock()) {
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 写入后登记新数据(及被替换的旧数据)，并执行淘汰
+     *
+     * @param cacheObject
+     * @param old
+     */
+    void afterWrite(CacheObject cacheObject, CacheObject old) {
+        if (old != null) {
+            removeBuffer.offer(old);
+        }
+        addBuffer.offer(cacheObject);
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 数据被删除后登记
+     *
+     * @param old
+     */
+    void afterRemove(CacheObject old) {
+        removeBuffer.offer(old);
+        if (evictionLock.tryLock()) {
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 推进时间轮，删除到期的数据
+     *
+     * @param now
+     */
+    void expireEntries(long now) {
+        evictionLock.lock();
+        try {
+            maintenance();
+            timerWheel.advance(now);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 当前策略跟踪的数据量
+     *
+     * @return
+     */
+    long size() {
+        evictionLock.lock();
+        try {
+            maintenance();
+            return size;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 当前策略跟踪的权重总和
+     *
+     * @return
+     */
+    long weightedSize() {
+        evictionLock.lock();
+        try {
+            maintenance();
+            return weightedSize;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void maintenance() {
+        readBuffer.drainTo(this);
+        CacheObject e;
+        while ((e = addBuffer.poll()) != null) {
+            onAdd(e);
+        }
+        while ((e = removeBuffer.poll()) != null) {
+            onRemove(e);
+        }
+        evictEntries();
+    }
+
+    private void onAdd(CacheObject e) {
+        if (e.queueType != UNLINKED) {
+            return;
+        }
+        sketch.increment(e.key);
+        e.queueType = WINDOW;
+        window.addLast(e);
+        windowWeightedSize += e.weight;
+        weightedSize += e.weight;
+        size++;
+        if (e.getExpireTime() > 0) {
+            timerWheel.schedule(e);
+        }
+    }
+
+    private void onRemove(CacheObject e) {
+        unlink(e);
+        timerWheel.deschedule(e);
+        e.queueType = RETIRED;
+        e.releaseValue();
+    }
+
+    void onExpire(CacheObject e) {
+        unlink(e);
+        e.queueType = RETIRED;
+        if (data.remove(e.key, e)) {
+            stats.recordExpiration();
+        }
+        e.releaseValue();
+    }
+
+    void onAccess(CacheObject e) {
+        sketch.increment(e.key);
+        switch (e.queueType) {
+            case WINDOW:
+                window.moveToBack(e);
+                break;
+            case PROBATION:
+                probation.remove(e);
+                e.queueType = PROTECTED;
+                protectedDeque.addLast(e);
+                protectedWeightedSize += e.weight;
+                demoteFromProtected();
+                break;
+            case PROTECTED:
+                protectedDeque.moveToBack(e);
+                break;
+            default:
+        }
+    }
+
+    private void demoteFromProtected() {
+        while (protectedWeightedSize > protectedMaximum) {
+            CacheObject demoted = protectedDeque.pollFirst();
+            if (demoted == null) {
+                break;
+            }
+            protectedWeightedSize -= demoted.weight;
+            demoted.queueType = PROBATION;
+            probation.addLast(demoted);
+        }
+    }
+
+    private void unlink(CacheObject e) {
+        switch (e.queueType) {
+            case WINDOW:
+                window.remove(e);
+                windowWeightedSize -= e.weight;
+                weightedSize -= e.weight;
+                size--;
+                break;
+            case PROBATION:
+                probation.remove(e);
+                weightedSize -= e.weight;
+                size--;
+                break;
+            case PROTECTED:
+                protectedDeque.remove(e);
+                protectedWeightedSize -= e.weight;
+                weightedSize -= e.weight;
+                size--;
+                break;
+            default:
+        }
+    }
+
+    private void evictEntries() {
+        // 窗口溢出的数据移到试用区尾部，成为候选者
+        int candidates = 0;
+        while (windowWeightedSize > windowMaximum) {
+            CacheObject e = window.pollFirst();
+            if (e == null) {
+                break;
+            }
+            windowWeightedSize -= e.weight;
+            e.queueType = PROBATION;
+            probation.addLast(e);
+            candidates++;
+        }
+        CacheObject candidate = (candidates > 0) ? probation.peekLast() : null;
+        while (weightedSize > maximum) {
+            CacheObject victim = probation.peekFirst();
+            if (candidates == 0 || candidate == null) {
+                if (victim == null) {
+                    victim = protectedDeque.peekFirst();
+                }
+                if (victim == null) {
+                    victim = window.peekFirst();
+                }
+                if (victim == null) {
+                    break;
+                }
+                evict(victim);
+                continue;
+            }
+            CacheObject evictee;
+            if (victim == null || victim == candidate) {
+                evictee = candidate;
+            } else if (admit(candidate, victim)) {
+                evictee = victim;
+            } else {
+                evictee = candidate;
+            }
+            candidates--;
+            candidate = candidate.prevInAccessOrder;
+            evict(evictee);
+        }
+    }
+
+    /**
+     * 候选者频率高于受害者才允许进入；对中等频率的候选者随机放行，防止哈希碰撞攻击
+     */
+    private boolean admit(CacheObject candidate, CacheObject victim) {
+        int candidateFreq = sketch.frequency(candidate.key);
+        int victimFreq = sketch.frequency(victim.key);
+        if (candidateFreq > victimFreq) {
+            return true;
+        } else if (candidateFreq <= 5) {
+            return false;
+        }
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    private void evict(CacheObject e) {
+        unlink(e);
+        timerWheel.deschedule(e);
+        e.queueType = RETIRED;
+        // 只删除仍是当前值的数据，已被替换的数据由替换方登记
+        if (data.remove(e.key, e)) {
+            stats.recordEviction();
+            EvictionListener listener = evictionListener;
+            if (listener != null) {
+                listener.onEviction(e);
+            }
+        }
+        e.releaseValue();
+    }
+
+    /**
+     * 数据因容量不足被淘汰时的回调，在淘汰锁内、释放堆外内存之前调用，不能有耗时操作
+     */
+    interface EvictionListener {
+        void onEviction(CacheObject e);
+    }
+
+    /**
+     * 不加锁的双向链表，节点即缓存对象本身
+     */
+    static final class AccessOrderDeque {
+        private CacheObject first;
+        private CacheObject last;
+
+        CacheObject peekFirst() {
+            return first;
+        }
+
+        CacheObject peekLast() {
+            return last;
+        }
+
+        void addLast(CacheObject e) {
+            e.prevInAccessOrder = last;
+            e.nextInAccessOrder = null;
+            if (last == null) {
+                first = e;
+            } else {
+                last.nextInAccessOrder = e;
+            }
+            last = e;
+        }
+
+        CacheObject pollFirst() {
+            CacheObject e = first;
+            if (e != null) {
+                remove(e);
+            }
+            return e;
+        }
+
+        void moveToBack(CacheObject e) {
+            if (e != last) {
+                remove(e);
+                addLast(e);
+            }
+        }
+
+        void remove(CacheObject e) {
+            CacheObject prev = e.prevInAccessOrder;
+            CacheObject next = e.nextInAccessOrder;
+            if (prev == null) {
+                first = next;
+            } else {
+                prev.nextInAccessOrder = next;
+            }
+            if (next == null) {
+                last = prev;
+            } else {
+                next.prevInAccessOrder = prev;
+            }
+            e.prevInAccessOrder = null;
+            e.nextInAccessOrder = null;
+        }
+    }
+}
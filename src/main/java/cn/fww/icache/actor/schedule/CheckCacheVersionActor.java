@@ -1,18 +1,21 @@
 package cn.fww.icache.actor.schedule;
 
-import akka.actor.ActorSelection;
 import akka.actor.UntypedActor;
 import cn.fww.icache.InnerCache;
 import cn.fww.icache.InnerCacheTemplate;
+import cn.fww.icache.VersionCheckStats;
 import cn.fww.icache.actor.eume.ActorCommand;
 import cn.fww.icache.common.Constant;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 
 import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -34,40 +37,48 @@ public class CheckCacheVersionActor extends UntypedActor {
     public void onReceive(Object message) throws Exception {
         if (message == ActorCommand.START) {
             logger.info("检查缓存版本是否更新了。");
-            Map<String, String> versionMap = InnerCache.getCacheVersionMap();
-            Set<String> versionKey = versionMap.keySet();
-            if (versionKey.size() > 0) {
-                Map<Object, Object> versionRedisMap = innerCacheTemplate.getAllVersion();
-                for (Map.Entry<Object, Object> o : versionRedisMap.entrySet()) {
-                    String keyRedis = o.getKey().toString();
-                    String version = versionMap.get(keyRedis);
-                    String versionRedis = o.getValue().toString();
-                    // 版本更新
-                    if (StringUtils.isNotBlank(version) && !versionRedis.equals(version)) {
-                        // 清理缓存，然后更新版本到缓存，通知actor执行缓存更新操作
-                        innerCacheTemplate.remove(keyRedis);
-                        versionMap.put(keyRedis, versionRedis);
-                        notifyActor(keyRedis);
-                    } else if (!innerCacheTemplate.isExistRedisCache(keyRedis)) {
-                        // redis缓存失效
-                        notifyActor(keyRedis);
+            Map<String, Long> versionMap = InnerCache.getCacheVersionMap();
+            try {
+                if (versionMap.size() > 0) {
+                    long start = System.nanoTime();
+                    // 只下载变更过的桶
+                    Map<String, Long> versionRedisMap = innerCacheTemplate.getChangedVersion();
+                    Set<String> refreshed = new HashSet<>();
+                    for (Map.Entry<String, Long> o : versionRedisMap.entrySet()) {
+                        String keyRedis = o.getKey();
+                        Long version = versionMap.get(keyRedis);
+                        Long versionRedis = o.getValue();
+                        // 版本更新。只前进不后退：扫描之后推送可能已把本地版本号更新得比扫描结果新
+                        if (version != null && versionRedis > version
+                                && innerCacheTemplate.advanceVersion(keyRedis, versionRedis)) {
+                            // 已作废旧版本缓存(或标记为过时，新值加载前继续使用)，重新加载数据集并通知actor执行缓存更新操作
+                            innerCacheTemplate.notifyActor(keyRedis);
+                            refreshed.add(keyRedis);
+                        }
                     }
+                    // 只检查变更过的桶里的key，下载全部桶的那次检查全部key，检查的开销跟着变更量走
+                    Collection<String> candidates = innerCacheTemplate.isLastVersionCheckFull()
+                            ? versionMap.keySet() : versionRedisMap.keySet();
+                    List<String> keys = new ArrayList<>(candidates.size());
+                    for (String key : candidates) {
+                        if (!refreshed.contains(key) && versionMap.containsKey(key)) {
+                            keys.add(key);
+                        }
+                    }
+                    // 批量检查，redis缓存失效的通知actor
+                    for (String key : innerCacheTemplate.findMissingRedisCache(keys)) {
+                        innerCacheTemplate.tellActor(key);
+                    }
+                    innerCacheTemplate.recordVersionCheck(System.nanoTime() - start, keys.size());
+                    VersionCheckStats stats = innerCacheTemplate.getVersionCheckStats();
+                    logger.info("缓存版本检查完成，耗时{}ms，检查{}个key，redis往返{}次", stats.getLastMillis(),
+                            stats.getLastKeyCount(), stats.getLastRoundTrips());
                 }
+            } catch (Exception e) {
+                // redis不可用时保留本地版本号，下次检查再同步
+                logger.warn("检查缓存版本失败，继续使用本地版本号。{}", e.getMessage());
             }
         }
     }
 
-    /**
-     * 通知对应的actor进行处理
-     *
-     * @param keyRedis
-     */
-    private void notifyActor(String keyRedis) {
-        String actorPath = innerCacheTemplate.getActorPathByKey(keyRedis);
-        if (StringUtils.isNotBlank(actorPath)) {
-            ActorSelection selection = getContext().actorSelection("../" + actorPath);
-            selection.tell(ActorCommand.START, getSelf());
-        }
-    }
-
 }
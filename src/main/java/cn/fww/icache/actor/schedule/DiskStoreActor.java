@@ -0,0 +1,26 @@
+package cn.fww.icache.actor.schedule;
+
+import akka.actor.UntypedActor;
+import cn.fww.icache.CacheRegion;
+import cn.fww.icache.InnerCache;
+import cn.fww.icache.actor.eume.ActorCommand;
+
+/**
+ * @Description: 把各区域被淘汰的数据写入磁盘溢出层并定时压缩段文件的调度actor，写盘不在淘汰锁里执行
+ * @author: Wen
+ * @Date: create in 2018/2/14 11:05
+ */
+public class DiskStoreActor extends UntypedActor {
+
+    @Override
+    public void onReceive(Object message) throws Exception {
+        if (message == ActorCommand.START) {
+            for (CacheRegion region : InnerCache.getRegions()) {
+                if (region.getDiskStore() != null) {
+                    region.getDiskStore().flush();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package cn.fww.icache.actor.schedule;
+
+import akka.actor.UntypedActor;
+import cn.fww.icache.InnerCacheTemplate;
+import cn.fww.icache.actor.eume.ActorCommand;
+
+/**
+ * @Description: 定时写入本地缓存快照的调度actor
+ * @author: Wen
+ * @Date: create in 2018/2/15 11:02
+ */
+public class SnapshotActor extends UntypedActor {
+
+    private final InnerCacheTemplate innerCacheTemplate;
+
+    public SnapshotActor(InnerCacheTemplate innerCacheTemplate) {
+        this.innerCacheTemplate = innerCacheTemplate;
+    }
+
+    @Override
+    public void onReceive(Object message) throws Exception {
+        if (message == ActorCommand.START) {
+            innerCacheTemplate.writeSnapshot();
+        }
+    }
+
+}
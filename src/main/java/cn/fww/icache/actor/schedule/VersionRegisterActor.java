@@ -0,0 +1,27 @@
+package cn.fww.icache.actor.schedule;
+
+import akka.actor.UntypedActor;
+import cn.fww.icache.InnerCacheTemplate;
+import cn.fww.icache.actor.eume.ActorCommand;
+
+/**
+ * @Description: 把待登记的默认版本号批量写入redis的调度actor，写入不在请求线程里执行
+ * @author: Wen
+ * @Date: create in 2018/2/9 10:12
+ */
+public class VersionRegisterActor extends UntypedActor {
+
+    private final InnerCacheTemplate innerCacheTemplate;
+
+    public VersionRegisterActor(InnerCacheTemplate innerCacheTemplate) {
+        this.innerCacheTemplate = innerCacheTemplate;
+    }
+
+    @Override
+    public void onReceive(Object message) throws Exception {
+        if (message == ActorCommand.START) {
+            innerCacheTemplate.flushVersionRegistration();
+        }
+    }
+
+}
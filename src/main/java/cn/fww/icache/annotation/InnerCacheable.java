@@ -21,10 +21,37 @@ public @interface InnerCacheable {
 
     InitOption[] initOption() default {};
 
+    /**
+     * 与isInit一起使用：全部initOption的结果加载成一个不可变的数据集，版本更新时在后台完整重新加载后整体替换，
+     * 读取时不会看到空的或更新了一半的数据。数据集不放在缓存区域中，不受容量和ttl限制
+     */
+    boolean atomicSwap() default false;
+
     int ttl() default -1;
 
+    /**
+     * 写入多久(毫秒)后提前刷新，-1为不刷新。超过后读取仍返回当前值，同时异步重新加载一次；
+     * 应小于ttl，否则数据会先过期
+     */
+    int refreshAfter() default -1;
+
+    /**
+     * 是否缓存null结果，防止不存在的数据每次都穿透到数据源
+     */
+    boolean cacheNull() default false;
+
+    /**
+     * null结果的缓存时间(毫秒)
+     */
+    int nullTtl() default 60000;
+
     boolean isVersion() default false;
 
+    /**
+     * 缓存区域名称，为空时使用默认区域；区域的容量、默认ttl等在InnerCacheTemplate中配置
+     */
+    String region() default "";
+
     String actorBean() default "";
 
     Cacheable CACHEABLE() default @Cacheable();
@@ -0,0 +1,333 @@
+package cn.fww.icache.codec;
+
+import cn.fww.icache.NullValue;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @description: 紧凑的二进制编解码器。常用类型(基本类型包装类、String、byte[]、Date、
+ * ArrayList、HashMap、LinkedHashMap、HashSet、LinkedHashSet)用一个字节的类型标记加值，
+ * 整数用变长编码；注册过的对象按字段结构写入，只写注册编号不写类名；
+ * 其他实现了Serializable的类型退回java序列化。对象图不能有循环引用。
+ * 每个线程复用一个输出缓冲区，编码过程不产生中间对象。
+ * @author: Wen
+ * @date: create in 2018/2/12 14:40
+ */
+public class BinaryCodec implements Codec {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte NULL_VALUE = 1;
+    private static final byte TRUE = 2;
+    private static final byte FALSE = 3;
+    private static final byte BYTE = 4;
+    private static final byte SHORT = 5;
+    private static final byte INT = 6;
+    private static final byte LONG = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte CHAR = 10;
+    private static final byte STRING = 11;
+    private static final byte BYTES = 12;
+    private static final byte DATE = 13;
+    private static final byte ARRAY_LIST = 14;
+    private static final byte HASH_MAP = 15;
+    private static final byte LINKED_HASH_MAP = 16;
+    private static final byte HASH_SET = 17;
+    private static final byte LINKED_HASH_SET = 18;
+    private static final byte POJO = 19;
+    private static final byte JAVA = 20;
+
+    /**
+     * 超过这个大小的缓冲区用完不再复用，避免一次大对象让线程长期占用内存
+     */
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<BinaryOutput> OUTPUT = new ThreadLocal<BinaryOutput>() {
+        @Override
+        protected BinaryOutput initialValue() {
+            return new BinaryOutput(256);
+        }
+    };
+
+    private final ConcurrentHashMap<Class<?>, PojoSchema> schemaByType = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Integer, PojoSchema> schemaById = new ConcurrentHashMap<>();
+
+    private final JdkCodec jdkCodec = new JdkCodec();
+
+    /**
+     * 注册对象类型，各节点同一类型必须使用同一编号。同一类型用同一编号重复注册时忽略
+     *
+     * @param type 必须有无参构造方法
+     * @param id   非负数
+     * @return
+     * @throws IllegalArgumentException 编号已被其他类型使用，或该类型已用其他编号注册
+     */
+    public synchronized BinaryCodec register(Class<?> type, int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("注册编号不能为负数：" + id);
+        }
+        PojoSchema registered = schemaByType.get(type);
+        if (registered != null) {
+            if (registered.id != id) {
+                throw new IllegalArgumentException(type.getName() + "已使用注册编号" + registered.id + "，不能再注册为" + id);
+            }
+            return this;
+        }
+        PojoSchema existing = schemaById.get(id);
+        if (existing != null) {
+            throw new IllegalArgumentException("注册编号" + id + "已被" + existing.type.getName() + "使用");
+        }
+        PojoSchema schema = new PojoSchema(type, id);
+        schemaById.put(id, schema);
+        schemaByType.put(type, schema);
+        return this;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        BinaryOutput out = OUTPUT.get();
+        out.reset();
+        try {
+            out.writeByte(FORMAT_VERSION);
+            writeValue(out, value);
+            return out.toByteArray();
+        } catch (IllegalAccessException e) {
+            throw new CodecException("读取字段失败", e);
+        } finally {
+            if (out.capacity() > MAX_POOLED_CAPACITY) {
+                OUTPUT.remove();
+            }
+        }
+    }
+
+    @Override
+    public Object decode(byte[] data, int offset, int length) {
+        BinaryInput in = new BinaryInput(data, offset, length);
+        try {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new CodecException("不支持的数据格式版本：" + version);
+            }
+            return readValue(in);
+        } catch (IllegalAccessException e) {
+            throw new CodecException("写入字段失败", e);
+        } catch (CodecException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // 数据损坏或节点间类结构不一致(越界、类型不匹配等)，都按解码失败处理
+            throw new CodecException("数据无法解码：" + e, e);
+        }
+    }
+
+    private void writeValue(BinaryOutput out, Object value) throws IllegalAccessException {
+        if (value == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            out.writeByte(STRING);
+            out.writeString((String) value);
+        } else if (type == Integer.class) {
+            out.writeByte(INT);
+            out.writeSignedVarInt((Integer) value);
+        } else if (type == Long.class) {
+            out.writeByte(LONG);
+            out.writeSignedVarLong((Long) value);
+        } else if (type == Boolean.class) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (type == Double.class) {
+            out.writeByte(DOUBLE);
+            out.writeFixedLong(Double.doubleToRawLongBits((Double) value));
+        } else if (type == Float.class) {
+            out.writeByte(FLOAT);
+            out.writeFixedInt(Float.floatToRawIntBits((Float) value));
+        } else if (type == Short.class) {
+            out.writeByte(SHORT);
+            out.writeSignedVarInt((Short) value);
+        } else if (type == Byte.class) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (type == Character.class) {
+            out.writeByte(CHAR);
+            out.writeVarInt((Character) value);
+        } else if (type == byte[].class) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            out.writeBytes(bytes, 0, bytes.length);
+        } else if (type == Date.class) {
+            out.writeByte(DATE);
+            out.writeSignedVarLong(((Date) value).getTime());
+        } else if (type == ArrayList.class) {
+            List<?> list = (List<?>) value;
+            int size = list.size();
+            out.writeByte(ARRAY_LIST);
+            out.writeVarInt(size);
+            for (int i = 0; i < size; i++) {
+                writeValue(out, list.get(i));
+            }
+        } else if (type == HashMap.class || type == LinkedHashMap.class) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(type == HashMap.class ? HASH_MAP : LINKED_HASH_MAP);
+            out.writeVarInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else if (type == HashSet.class || type == LinkedHashSet.class) {
+            Set<?> set = (Set<?>) value;
+            out.writeByte(type == HashSet.class ? HASH_SET : LINKED_HASH_SET);
+            out.writeVarInt(set.size());
+            for (Object element : set) {
+                writeValue(out, element);
+            }
+        } else if (value == NullValue.INSTANCE) {
+            out.writeByte(NULL_VALUE);
+        } else {
+            PojoSchema schema = schemaByType.get(type);
+            if (schema != null) {
+                out.writeByte(POJO);
+                out.writeVarInt(schema.id);
+                writeFields(out, schema, value);
+            } else {
+                byte[] bytes = jdkCodec.encode(value);
+                out.writeByte(JAVA);
+                out.writeBytes(bytes, 0, bytes.length);
+            }
+        }
+    }
+
+    private Object readValue(BinaryInput in) throws IllegalAccessException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case NULL_VALUE:
+                return NullValue.INSTANCE;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return (short) in.readSignedVarInt();
+            case INT:
+                return in.readSignedVarInt();
+            case LONG:
+                return in.readSignedVarLong();
+            case FLOAT:
+                return Float.intBitsToFloat(in.readFixedInt());
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readFixedLong());
+            case CHAR:
+                return (char) in.readVarInt();
+            case STRING:
+                return in.readString();
+            case BYTES:
+                return in.readBytes();
+            case DATE:
+                return new Date(in.readSignedVarLong());
+            case ARRAY_LIST: {
+                int size = in.readLength();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case HASH_MAP:
+            case LINKED_HASH_MAP: {
+                int size = in.readLength();
+                int capacity = (int) (size / 0.75f) + 1;
+                Map<Object, Object> map = tag == HASH_MAP
+                        ? new HashMap<>(capacity) : new LinkedHashMap<>(capacity);
+                for (int i = 0; i < size; i++) {
+                    map.put(readValue(in), readValue(in));
+                }
+                return map;
+            }
+            case HASH_SET:
+            case LINKED_HASH_SET: {
+                int size = in.readLength();
+                int capacity = (int) (size / 0.75f) + 1;
+                Set<Object> set = tag == HASH_SET ? new HashSet<>(capacity) : new LinkedHashSet<>(capacity);
+                for (int i = 0; i < size; i++) {
+                    set.add(readValue(in));
+                }
+                return set;
+            }
+            case POJO: {
+                int id = in.readVarInt();
+                PojoSchema schema = schemaById.get(id);
+                if (schema == null) {
+                    throw new CodecException("未注册的对象编号：" + id);
+                }
+                Object value = schema.newInstance();
+                readFields(in, schema, value);
+                return value;
+            }
+            case JAVA: {
+                byte[] bytes = in.readBytes();
+                return jdkCodec.decode(bytes, 0, bytes.length);
+            }
+            default:
+                throw new CodecException("未知的类型标记：" + tag);
+        }
+    }
+
+    private void writeFields(BinaryOutput out, PojoSchema schema, Object value) throws IllegalAccessException {
+        for (Field field : schema.fields) {
+            Class<?> type = field.getType();
+            if (!type.isPrimitive()) {
+                writeValue(out, field.get(value));
+            } else if (type == int.class) {
+                out.writeSignedVarInt(field.getInt(value));
+            } else if (type == long.class) {
+                out.writeSignedVarLong(field.getLong(value));
+            } else if (type == boolean.class) {
+                out.writeByte(field.getBoolean(value) ? 1 : 0);
+            } else if (type == double.class) {
+                out.writeFixedLong(Double.doubleToRawLongBits(field.getDouble(value)));
+            } else if (type == float.class) {
+                out.writeFixedInt(Float.floatToRawIntBits(field.getFloat(value)));
+            } else if (type == short.class) {
+                out.writeSignedVarInt(field.getShort(value));
+            } else if (type == byte.class) {
+                out.writeByte(field.getByte(value));
+            } else {
+                out.writeVarInt(field.getChar(value));
+            }
+        }
+    }
+
+    private void readFields(BinaryInput in, PojoSchema schema, Object value) throws IllegalAccessException {
+        for (Field field : schema.fields) {
+            Class<?> type = field.getType();
+            if (!type.isPrimitive()) {
+                field.set(value, readValue(in));
+            } else if (type == int.class) {
+                field.setInt(value, in.readSignedVarInt());
+            } else if (type == long.class) {
+                field.setLong(value, in.readSignedVarLong());
+            } else if (type == boolean.class) {
+                field.setBoolean(value, in.readByte() != 0);
+            } else if (type == double.class) {
+                field.setDouble(value, Double.longBitsToDouble(in.readFixedLong()));
+            } else if (type == float.class) {
+                field.setFloat(value, Float.intBitsToFloat(in.readFixedInt()));
+            } else if (type == short.class) {
+                field.setShort(value, (short) in.readSignedVarInt());
+            } else if (type == byte.class) {
+                field.setByte(value, in.readByte());
+            } else {
+                field.setChar(value, (char) in.readVarInt());
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package cn.fww.icache.codec;
+
+/**
+ * @description: 与{@link BinaryOutput}对应的字节读取
+ * @author: Wen
+ * @date: create in 2018/2/12 11:20
+ */
+final class BinaryInput {
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+
+    BinaryInput(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    byte readByte() {
+        checkRemaining(1);
+        return buffer[position++];
+    }
+
+    int readVarInt() {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = readByte();
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new CodecException("变长整数格式错误");
+    }
+
+    long readVarLong() {
+        long result = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new CodecException("变长整数格式错误");
+    }
+
+    int readSignedVarInt() {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    long readSignedVarLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readFixedInt() {
+        checkRemaining(4);
+        byte[] b = buffer;
+        int p = position;
+        position = p + 4;
+        return ((b[p] & 0xFF) << 24) | ((b[p + 1] & 0xFF) << 16) | ((b[p + 2] & 0xFF) << 8) | (b[p + 3] & 0xFF);
+    }
+
+    long readFixedLong() {
+        return ((long) readFixedInt() << 32) | (readFixedInt() & 0xFFFFFFFFL);
+    }
+
+    byte[] readBytes() {
+        int length = readLength();
+        checkRemaining(length);
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    String readString() {
+        int length = readLength();
+        char[] chars = new char[length];
+        byte[] b = buffer;
+        for (int i = 0; i < length; i++) {
+            checkRemaining(1);
+            int c = b[position++] & 0xFF;
+            if (c < 0x80) {
+                chars[i] = (char) c;
+            } else if (c < 0xE0) {
+                checkRemaining(1);
+                chars[i] = (char) (((c & 0x1F) << 6) | (b[position++] & 0x3F));
+            } else {
+                checkRemaining(2);
+                chars[i] = (char) (((c & 0x0F) << 12) | ((b[position] & 0x3F) << 6) | (b[position + 1] & 0x3F));
+                position += 2;
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 读取长度，不可能超过剩余字节数
+     */
+    int readLength() {
+        int length = readVarInt();
+        if (length < 0 || length > limit - position) {
+            throw new CodecException("长度超出数据范围：" + length);
+        }
+        return length;
+    }
+
+    private void checkRemaining(int length) {
+        if (limit - position < length) {
+            throw new CodecException("数据不完整");
+        }
+    }
+}
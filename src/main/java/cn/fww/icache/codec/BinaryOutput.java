@@ -0,0 +1,115 @@
+package cn.fww.icache.codec;
+
+import java.util.Arrays;
+
+/**
+ * @description: 可复用的字节输出缓冲区，变长整数用7bit分组，字符串按字符写入变长的UTF-8编码
+ * @author: Wen
+ * @date: create in 2018/2/12 11:02
+ */
+final class BinaryOutput {
+
+    private byte[] buffer;
+    private int position;
+
+    BinaryOutput(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    void reset() {
+        position = 0;
+    }
+
+    int capacity() {
+        return buffer.length;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    void writeByte(int b) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) b;
+    }
+
+    void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * 有符号数先做zigzag变换，绝对值小的负数也只占很少字节
+     */
+    void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeFixedInt(int value) {
+        ensureCapacity(4);
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    void writeFixedLong(long value) {
+        writeFixedInt((int) (value >>> 32));
+        writeFixedInt((int) value);
+    }
+
+    void writeBytes(byte[] bytes, int offset, int length) {
+        writeVarInt(length);
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    /**
+     * 先写字符数，再逐个字符写1~3个字节(代理对的两个字符分别写)
+     */
+    void writeString(String value) {
+        int length = value.length();
+        writeVarInt(length);
+        ensureCapacity(length * 3);
+        byte[] b = buffer;
+        int p = position;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                b[p++] = (byte) c;
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xC0 | (c >> 6));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                b[p++] = (byte) (0xE0 | (c >> 12));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        position = p;
+    }
+
+    private void ensureCapacity(int length) {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + length));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package cn.fww.icache.codec;
+
+/**
+ * @description: 缓存值的序列化接口，二级缓存、快照和堆外存储都通过它把值转成字节
+ * @author: Wen
+ * @date: create in 2018/2/12 10:20
+ */
+public interface Codec {
+
+    /**
+     * 序列化
+     *
+     * @param value 可以为null
+     * @return
+     * @throws CodecException 不支持的类型
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 反序列化
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @return
+     * @throws CodecException 数据损坏或格式不兼容
+     */
+    Object decode(byte[] data, int offset, int length);
+}
@@ -0,0 +1,19 @@
+package cn.fww.icache.codec;
+
+/**
+ * @description: 序列化或反序列化失败
+ * @author: Wen
+ * @date: create in 2018/2/12 10:24
+ */
+public class CodecException extends RuntimeException {
+
+    private static final long serialVersionUID = -3276470536213402913L;
+
+    public CodecException(String message) {
+        super(message);
+    }
+
+    public CodecException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
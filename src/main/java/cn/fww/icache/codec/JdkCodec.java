@@ -0,0 +1,31 @@
+package cn.fww.icache.codec;
+
+import java.io.*;
+
+/**
+ * @description: 使用java自带序列化的编解码器，值必须实现Serializable
+ * @author: Wen
+ * @date: create in 2018/2/12 10:31
+ */
+public class JdkCodec implements Codec {
+
+    @Override
+    public byte[] encode(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new CodecException("java序列化失败：" + (value != null ? value.getClass().getName() : null), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] data, int offset, int length) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data, offset, length))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new CodecException("java反序列化失败", e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package cn.fww.icache.codec;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @description: 注册过的普通java对象的字段结构。字段按父类到子类、声明顺序排列(不含static和transient)，
+ * 基本类型字段按声明类型直接写值，不写类型标记。各节点的类结构必须一致。
+ * @author: Wen
+ * @date: create in 2018/2/12 14:06
+ */
+final class PojoSchema {
+
+    final Class<?> type;
+    final int id;
+    final Field[] fields;
+    private final Constructor<?> constructor;
+
+    PojoSchema(Class<?> type, int id) {
+        this.type = type;
+        this.id = id;
+        try {
+            this.constructor = type.getDeclaredConstructor();
+            this.constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new CodecException(type.getName() + "没有无参构造方法，不能注册", e);
+        }
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            hierarchy.add(0, c);
+        }
+        List<Field> fieldList = new ArrayList<>();
+        for (Class<?> c : hierarchy) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fieldList.add(field);
+            }
+        }
+        this.fields = fieldList.toArray(new Field[fieldList.size()]);
+    }
+
+    Object newInstance() {
+        try {
+            return constructor.newInstance();
+        } catch (Exception e) {
+            throw new CodecException("创建" + type.getName() + "失败", e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package cn.fww.icache.common;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description: 缓存的毫秒时钟，由后台线程每毫秒刷新一次，读路径判断过期时只读一个volatile变量
+ * @author: Wen
+ * @date: create in 2018/1/18 15:26
+ */
+public final class SystemClock {
+
+    private static volatile long now = System.currentTimeMillis();
+
+    static {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "icache-clock");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                now = System.currentTimeMillis();
+            }
+        }, 1, 1, TimeUnit.MILLISECONDS);
+    }
+
+    private SystemClock() {
+    }
+
+    /**
+     * 当前时间(毫秒)
+     *
+     * @return
+     */
+    public static long now() {
+        return now;
+    }
+}
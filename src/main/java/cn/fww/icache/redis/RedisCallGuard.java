@@ -0,0 +1,93 @@
+package cn.fww.icache.redis;
+
+import akka.actor.Scheduler;
+import akka.pattern.CircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.concurrent.duration.Duration;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description: redis调用的熔断保护。连续失败达到上限后熔断，熔断期间调用直接失败，重置时间过后试探恢复；
+ * 只有redis异常触发熔断，慢的调用只记录日志
+ * @author: Wen
+ * @date: create in 2018/2/21 11:30
+ */
+public class RedisCallGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisCallGuard.class);
+
+    private static final long BREAKER_CALL_TIMEOUT_DAYS = 1;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final long callTimeout;
+
+    private volatile boolean available = true;
+
+    /**
+     * @param scheduler    熔断器计时使用的调度器
+     * @param maxFailures  连续失败多少次后熔断
+     * @param callTimeout  超过多少毫秒的调用记录慢调用日志
+     * @param resetTimeout 熔断多少毫秒后试探恢复
+     */
+    public RedisCallGuard(Scheduler scheduler, int maxFailures, long callTimeout, final long resetTimeout) {
+        this.callTimeout = callTimeout;
+        // akka把超过调用超时的成功调用也算作失败，这里的超时设得足够长，只让redis异常触发熔断
+        circuitBreaker = CircuitBreaker.create(scheduler, maxFailures,
+                Duration.create(BREAKER_CALL_TIMEOUT_DAYS, TimeUnit.DAYS),
+                Duration.create(resetTimeout, TimeUnit.MILLISECONDS));
+        circuitBreaker.onOpen(new Runnable() {
+            @Override
+            public void run() {
+                available = false;
+                logger.error("redis连续调用失败，熔断{}毫秒，期间使用本地版本号", resetTimeout);
+            }
+        }).onClose(new Runnable() {
+            @Override
+            public void run() {
+                available = true;
+                logger.info("redis恢复可用");
+            }
+        });
+    }
+
+    /**
+     * 通过熔断器调用redis，熔断期间直接失败；超过callTimeout的调用记录慢调用日志
+     *
+     * @param call
+     * @param <T>
+     * @return
+     */
+    public <T> T call(Callable<T> call) {
+        long start = System.nanoTime();
+        T result = circuitBreaker.callWithSyncCircuitBreaker(call);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (millis > callTimeout) {
+            logger.warn("redis调用耗时{}ms，超过{}ms", millis, callTimeout);
+        }
+        return result;
+    }
+
+    /**
+     * 通过熔断器执行整个命名空间的扫描、批量下载等耗时随数据量增长的调用，不记录慢调用
+     *
+     * @param call
+     * @param <T>
+     * @return
+     */
+    public <T> T callBulk(Callable<T> call) {
+        return circuitBreaker.callWithSyncCircuitBreaker(call);
+    }
+
+    /**
+     * redis是否可用(熔断器没有打开)
+     *
+     * @return
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+}
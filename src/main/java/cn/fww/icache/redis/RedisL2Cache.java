@@ -0,0 +1,128 @@
+package cn.fww.icache.redis;
+
+import cn.fww.icache.codec.Codec;
+import cn.fww.icache.codec.CodecException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @description: redis中的二级缓存。值序列化后存放在带版本号的key下(前缀+key+":"+版本号)，
+ * 版本号更新后旧值自然读不到，只等过期；批量读取用一次MGET。无法解码的值(例如编码格式变了)当作没有缓存。
+ * @author: Wen
+ * @date: create in 2018/2/10 15:02
+ */
+public class RedisL2Cache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisL2Cache.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final String keyPrefix;
+
+    private final Codec codec;
+
+    public RedisL2Cache(StringRedisTemplate stringRedisTemplate, String keyPrefix, Codec codec) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.keyPrefix = keyPrefix;
+        this.codec = codec;
+    }
+
+    /**
+     * 读取指定版本的值
+     *
+     * @param key
+     * @param version
+     * @return 没有时返回null
+     */
+    public Object get(String key, long version) {
+        final byte[] rawKey = rawKey(key, version);
+        byte[] value = stringRedisTemplate.execute(new RedisCallback<byte[]>() {
+            @Override
+            public byte[] doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.get(rawKey);
+            }
+        });
+        return decode(value);
+    }
+
+    /**
+     * 一次MGET读取多个key的指定版本
+     *
+     * @param keys
+     * @param versions 与keys一一对应
+     * @return 与keys一一对应，没有的为null
+     */
+    public List<Object> getAll(List<String> keys, List<Long> versions) {
+        final byte[][] rawKeys = new byte[keys.size()][];
+        for (int i = 0; i < rawKeys.length; i++) {
+            rawKeys[i] = rawKey(keys.get(i), versions.get(i));
+        }
+        List<byte[]> values = stringRedisTemplate.execute(new RedisCallback<List<byte[]>>() {
+            @Override
+            public List<byte[]> doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.mGet(rawKeys);
+            }
+        });
+        List<Object> result = new ArrayList<>(rawKeys.length);
+        for (int i = 0; i < rawKeys.length; i++) {
+            result.add(values != null && i < values.size() ? decode(values.get(i)) : null);
+        }
+        return result;
+    }
+
+    /**
+     * 写入指定版本编码后的值，编码放在调用redis之前，编码失败不算redis调用失败
+     *
+     * @param key
+     * @param version
+     * @param rawValue {@link #encode(Object)}的结果
+     * @param ttl      过期时间(毫秒)
+     */
+    public void put(String key, long version, final byte[] rawValue, final long ttl) {
+        final byte[] rawKey = rawKey(key, version);
+        stringRedisTemplate.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.pSetEx(rawKey, ttl, rawValue);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 编码要写入的值
+     *
+     * @param value
+     * @return
+     * @throws CodecException 不支持的类型
+     */
+    public byte[] encode(Object value) {
+        return codec.encode(value);
+    }
+
+    private Object decode(byte[] value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return codec.decode(value, 0, value.length);
+        } catch (CodecException e) {
+            logger.warn("二级缓存的值无法解码，当作没有缓存。{}", e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] rawKey(String key, long version) {
+        return (keyPrefix + key + ":" + version).getBytes(UTF_8);
+    }
+}
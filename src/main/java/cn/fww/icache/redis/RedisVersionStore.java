@@ -0,0 +1,284 @@
+package cn.fww.icache.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @description: 版本号在redis中的存储。命名空间按key的哈希分成若干个桶(每个桶一个hash)，
+ * 另有一个摘要hash记录每个桶的变更计数，版本号和所在桶的变更计数在同一个lua脚本里自增。
+ * 定时检查时先比较摘要，只下载变更过的桶，开销只与变更量有关，而与命名空间大小无关。
+ * 只有一个桶时桶就是命名空间本身，与原来的存储格式兼容。读取桶用HSCAN分页，避免大key阻塞redis。
+ * 脚本同时操作桶和摘要，redis集群要求它们在同一个slot：桶和摘要的key都以{命名空间}作为hash tag，
+ * 命名空间本身已带hash tag时直接使用；只有一个桶时命名空间本身与{命名空间}的slot相同。
+ * @author: Wen
+ * @date: create in 2018/2/7 14:20
+ */
+public class RedisVersionStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisVersionStore.class);
+
+    /**
+     * KEYS[1]桶，KEYS[2]摘要；ARGV[1]缓存key，ARGV[2]桶序号
+     */
+    public static final RedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "local version = redis.call('HINCRBY', KEYS[1], ARGV[1], 1) "
+                    + "redis.call('HINCRBY', KEYS[2], ARGV[2], 1) "
+                    + "return version", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final String namespace;
+
+    private final int bucketCount;
+
+    private final String digestKey;
+
+    /**
+     * 每隔多少次检查下载一次全部的桶，兼容不更新摘要的旧节点，0表示从不
+     */
+    private final int fullCheckCycles;
+
+    /**
+     * HSCAN每页的数量
+     */
+    private final int scanPageSize;
+
+    /**
+     * 上次检查时各桶的变更计数，只在检查版本的actor里访问
+     */
+    private String[] lastDigests;
+
+    private long checkCycles;
+
+    private int lastRoundTrips;
+
+    /**
+     * 上次检查是否下载了全部的桶
+     */
+    private boolean lastFull;
+
+    public RedisVersionStore(StringRedisTemplate stringRedisTemplate, String namespace, int bucketCount, int fullCheckCycles,
+                             int scanPageSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.namespace = namespace;
+        this.bucketCount = Math.max(1, bucketCount);
+        this.digestKey = keyPrefix(namespace) + ":digest";
+        this.fullCheckCycles = fullCheckCycles;
+        this.scanPageSize = Math.max(1, scanPageSize);
+    }
+
+    /**
+     * key所在的桶
+     *
+     * @param key
+     * @return
+     */
+    public int bucketOf(String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % bucketCount;
+    }
+
+    /**
+     * 桶对应的redis key
+     *
+     * @param bucket
+     * @return
+     */
+    public String bucketKey(int bucket) {
+        return bucketCount == 1 ? namespace : keyPrefix(namespace) + ":" + bucket;
+    }
+
+    /**
+     * 变更计数所在的redis key，与各个桶在redis集群的同一个slot
+     *
+     * @return
+     */
+    public String getDigestKey() {
+        return digestKey;
+    }
+
+    /**
+     * 桶和摘要key的前缀，保证与命名空间本身在同一个slot
+     */
+    private static String keyPrefix(String namespace) {
+        int start = namespace.indexOf('{');
+        if (start >= 0) {
+            int end = namespace.indexOf('}', start + 1);
+            if (end > start + 1) {
+                // 已有hash tag，集群只按tag计算slot
+                return namespace;
+            }
+        }
+        return "{" + namespace + "}";
+    }
+
+    /**
+     * 批量登记默认版本号(HSETNX)，在一个管道里执行，redis中已有版本号时以redis为准
+     *
+     * @param keys
+     * @param defaultVersion
+     * @return 登记后redis中的版本号
+     */
+    public Map<String, Long> registerAll(final List<String> keys, final long defaultVersion) {
+        final String value = String.valueOf(defaultVersion);
+        List<Object> results = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                HashOperations<K, Object, Object> hashOperations = operations.opsForHash();
+                for (String key : keys) {
+                    K bucketKey = (K) bucketKey(bucketOf(key));
+                    hashOperations.putIfAbsent(bucketKey, key, value);
+                    hashOperations.get(bucketKey, key);
+                }
+                return null;
+            }
+        });
+        Map<String, Long> versions = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Object version = results.get(2 * i + 1);
+            versions.put(keys.get(i), version != null ? Long.parseLong(version.toString()) : defaultVersion);
+        }
+        return versions;
+    }
+
+    /**
+     * 版本号加一，同时增加所在桶的变更计数
+     *
+     * @param key
+     * @return 新版本号
+     */
+    public long increment(String key) {
+        int bucket = bucketOf(key);
+        return stringRedisTemplate.execute(INCREMENT_SCRIPT, Arrays.asList(bucketKey(bucket), digestKey),
+                key, String.valueOf(bucket));
+    }
+
+    /**
+     * 下载全部版本号
+     *
+     * @return
+     */
+    public Map<String, Long> entries() {
+        final Map<String, Long> versions = new HashMap<>();
+        scan(new VersionHandler() {
+            @Override
+            public void handle(String key, long version) {
+                versions.put(key, version);
+            }
+        });
+        return versions;
+    }
+
+    /**
+     * 分页读取全部版本号，边读边处理
+     *
+     * @param handler
+     * @return 版本号数量
+     */
+    public int scan(VersionHandler handler) {
+        int count = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            count += scanBucket(i, handler);
+        }
+        return count;
+    }
+
+    /**
+     * 只下载上次检查之后变更过的桶，第一次检查下载全部
+     *
+     * @return 变更过的桶里的版本号
+     */
+    public Map<String, Long> changedEntries() {
+        Map<Object, Object> digests = stringRedisTemplate.opsForHash().entries(digestKey);
+        boolean full = lastDigests == null || (fullCheckCycles > 0 && ++checkCycles % fullCheckCycles == 0);
+        String[] currentDigests = new String[bucketCount];
+        final Map<String, Long> versions = new HashMap<>();
+        VersionHandler handler = new VersionHandler() {
+            @Override
+            public void handle(String key, long version) {
+                versions.put(key, version);
+            }
+        };
+        int changedBuckets = 0;
+        int pages = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            Object digest = digests.get(String.valueOf(i));
+            currentDigests[i] = digest != null ? digest.toString() : "0";
+            if (full || !currentDigests[i].equals(lastDigests[i])) {
+                int count = scanBucket(i, handler);
+                changedBuckets++;
+                pages += Math.max(1, (count + scanPageSize - 1) / scanPageSize);
+            }
+        }
+        // 先读摘要再读桶，期间发生的变更会在下次检查时再读一次
+        lastDigests = currentDigests;
+        lastRoundTrips = 1 + pages;
+        lastFull = full;
+        logger.debug("版本检查下载了{}/{}个桶，共{}个版本号", changedBuckets, bucketCount, versions.size());
+        return versions;
+    }
+
+    private int scanBucket(int bucket, VersionHandler handler) {
+        int count = 0;
+        ScanOptions options = ScanOptions.scanOptions().count(scanPageSize).build();
+        Cursor<Map.Entry<Object, Object>> cursor = stringRedisTemplate.opsForHash().scan(bucketKey(bucket), options);
+        try {
+            while (cursor.hasNext()) {
+                Map.Entry<Object, Object> o = cursor.next();
+                handler.handle(o.getKey().toString(), Long.parseLong(o.getValue().toString()));
+                count++;
+            }
+        } finally {
+            try {
+                cursor.close();
+            } catch (IOException e) {
+                logger.warn("关闭HSCAN游标失败", e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 上次检查版本时的redis往返次数
+     *
+     * @return
+     */
+    public int getLastRoundTrips() {
+        return lastRoundTrips;
+    }
+
+    /**
+     * 上次检查是否下载了全部的桶(第一次检查及每fullCheckCycles次检查)
+     *
+     * @return
+     */
+    public boolean isLastCheckFull() {
+        return lastFull;
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * 逐条处理读到的版本号
+     */
+    public interface VersionHandler {
+        void handle(String key, long version);
+    }
+}
@@ -0,0 +1,61 @@
+package cn.fww.icache.redis;
+
+import cn.fww.icache.InnerCacheTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+import java.nio.charset.Charset;
+
+/**
+ * @description: 订阅版本更新频道，收到其他节点发布的版本号后立即作废本地旧版本缓存。
+ * 消息格式为"版本号|key"，版本号是数字，按第一个分隔符拆分即可。
+ * @author: Wen
+ * @date: create in 2018/2/5 10:32
+ */
+public class VersionMessageListener implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(VersionMessageListener.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final char SEPARATOR = '|';
+
+    private final InnerCacheTemplate innerCacheTemplate;
+
+    public VersionMessageListener(InnerCacheTemplate innerCacheTemplate) {
+        this.innerCacheTemplate = innerCacheTemplate;
+    }
+
+    /**
+     * 生成版本更新消息
+     *
+     * @param key
+     * @param version
+     * @return
+     */
+    public static String encode(String key, long version) {
+        return String.valueOf(version) + SEPARATOR + key;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), UTF_8);
+        int index = body.indexOf(SEPARATOR);
+        if (index <= 0) {
+            logger.warn("无法解析的版本更新消息{}", body);
+            return;
+        }
+        try {
+            long version = Long.parseLong(body.substring(0, index));
+            String key = body.substring(index + 1);
+            if (innerCacheTemplate.advanceVersion(key, version)) {
+                logger.info("收到版本更新通知，key={},version={}", key, version);
+                innerCacheTemplate.notifyActor(key);
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("无法解析的版本更新消息{}", body);
+        }
+    }
+}
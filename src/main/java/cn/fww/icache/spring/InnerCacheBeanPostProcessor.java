@@ -1,18 +1,22 @@
 package cn.fww.icache.spring;
 
-import cn.fww.icache.annotation.InnerCacheable;
+import cn.fww.icache.spring.interceptor.InnerCacheOperation;
+import cn.fww.icache.spring.interceptor.InnerCacheOperationSource;
+import org.springframework.aop.framework.AopProxyUtils;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.stereotype.Component;
-import org.springframework.util.ReflectionUtils;
 
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * @Description: 找出InnerCacheable注解的方法，并开放出去。
+ * @Description: 找出InnerCacheable注解的方法，并开放出去。同时把每个类的缓存元数据登记好，没有注解的类只解析一次。
  * @author: Wen
  * @Date: create in 2017/11/29 17:53
  */
@@ -23,9 +27,15 @@ public class InnerCacheBeanPostProcessor implements BeanPostProcessor {
 
     private Map<Method, String> annotationBeanName = new HashMap<>();
 
+    private final Set<Class<?>> nonAnnotatedClasses =
+            Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>(64));
+
     @Autowired
     private SpringExt springExt;
 
+    @Autowired
+    private InnerCacheOperationSource operationSource;
+
     @Override
     public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
         return bean;
@@ -33,15 +43,20 @@ public class InnerCacheBeanPostProcessor implements BeanPostProcessor {
 
     @Override
     public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
-        Method[] methods = ReflectionUtils.getAllDeclaredMethods(bean.getClass());
-        if (methods != null) {
-            for (Method method : methods) {
-                InnerCacheable innerCacheable = method.getAnnotation(InnerCacheable.class);
-                if (innerCacheable != null) {
-                    System.err.println("找到注入InnerCache的方法了" + method.getName() + bean.getClass().getName());
-                    annotationBean.put(method, bean);
-                    annotationBeanName.put(method, beanName);
-                }
+        Class<?> targetClass = AopProxyUtils.ultimateTargetClass(bean);
+        if (nonAnnotatedClasses.contains(targetClass)) {
+            return bean;
+        }
+        Map<Method, InnerCacheOperation> operations = operationSource.registerClass(targetClass);
+        if (operations.isEmpty()) {
+            nonAnnotatedClasses.add(targetClass);
+            return bean;
+        }
+        for (Map.Entry<Method, InnerCacheOperation> o : operations.entrySet()) {
+            Method method = o.getKey();
+            if (o.getValue().isCacheable() && method.getDeclaringClass().isInstance(bean)) {
+                annotationBean.put(method, bean);
+                annotationBeanName.put(method, beanName);
             }
         }
         return bean;
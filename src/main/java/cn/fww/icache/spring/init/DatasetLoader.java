@@ -0,0 +1,86 @@
+package cn.fww.icache.spring.init;
+
+import cn.fww.icache.CacheObject;
+import cn.fww.icache.InitDataset;
+import cn.fww.icache.InnerCacheTemplate;
+import cn.fww.icache.spring.interceptor.InnerCacheOperation;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.aop.support.AopUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * @description: 初始化数据集的加载方法，每次调用都在旁边完整加载一个新数据集。
+ * 直接调用代理背后的目标对象，不经过InnerCacheInterceptor：经过拦截器时重新加载会读到旧数据集的值，
+ * 首次加载时还会把每个值再写一份到缓存区域
+ * @author: Wen
+ * @date: create in 2018/2/19 20:10
+ */
+class DatasetLoader implements Callable<InitDataset> {
+
+    private final InnerCacheTemplate innerCacheTemplate;
+    private final Method method;
+    private final Object bean;
+    private final Object target;
+    private final InnerCacheOperation operation;
+    private final List<Object[]> params;
+
+    /**
+     * @param innerCacheTemplate
+     * @param method             isInit方法
+     * @param bean               容器中的bean，可以是代理
+     * @param operation
+     * @param params             每个initOption的参数
+     */
+    DatasetLoader(InnerCacheTemplate innerCacheTemplate, Method method, Object bean, InnerCacheOperation operation,
+                  List<Object[]> params) {
+        this.innerCacheTemplate = innerCacheTemplate;
+        this.method = method;
+        this.bean = bean;
+        this.target = ultimateTarget(bean);
+        this.operation = operation;
+        this.params = params;
+    }
+
+    /**
+     * 版本号在调用方法前取，加载期间版本被更新时数据集读取时会被发现已过时
+     */
+    @Override
+    public InitDataset call() throws Exception {
+        InitDataset.Builder builder = InitDataset.builder(operation.getDatasetName());
+        for (Object[] objParam : params) {
+            String key = operation.getCacheableKeyGenerator().generate(bean, objParam);
+            long version = operation.isVersion() ? innerCacheTemplate.resolveVersion(key) : CacheObject.NO_VERSION;
+            Object result = invoke(objParam);
+            if (result != null) {
+                builder.put(key, result, version);
+            }
+        }
+        return builder.build();
+    }
+
+    private Object invoke(Object[] objParam) throws Exception {
+        try {
+            return AopUtils.invokeJoinpointUsingReflection(target, method, objParam);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    /**
+     * 逐层取出代理的目标对象
+     */
+    private static Object ultimateTarget(Object bean) {
+        Object target = bean;
+        Object next;
+        while ((next = AopProxyUtils.getSingletonTarget(target)) != null) {
+            target = next;
+        }
+        return target;
+    }
+}
@@ -2,14 +2,15 @@ package cn.fww.icache.spring.init;
 
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
+import cn.fww.icache.InitDataset;
 import cn.fww.icache.InnerCacheTemplate;
 import cn.fww.icache.annotation.InitOption;
 import cn.fww.icache.annotation.InnerCacheable;
 import cn.fww.icache.spring.InnerCacheBeanPostProcessor;
 import cn.fww.icache.spring.SpringExt;
 import cn.fww.icache.spring.core.DynamicClassLoader;
-import cn.fww.icache.spring.interceptor.CacheEvaluationContext;
-import cn.fww.icache.spring.interceptor.CacheExpressionRootObject;
+import cn.fww.icache.spring.interceptor.InnerCacheOperation;
+import cn.fww.icache.spring.interceptor.InnerCacheOperationSource;
 import javassist.ClassClassPath;
 import javassist.ClassPool;
 import javassist.CtClass;
@@ -20,7 +21,7 @@ import javassist.bytecode.MethodInfo;
 import javassist.bytecode.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.framework.AopProxyUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
@@ -31,14 +32,14 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.event.ContextRefreshedEvent;
-import org.springframework.core.DefaultParameterNameDiscoverer;
-import org.springframework.expression.ExpressionParser;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.stereotype.Component;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * @Description: 初始化执行方法
@@ -62,6 +63,9 @@ public class InitComponent implements ApplicationListener<ContextRefreshedEvent>
     @Autowired
     private ActorSystem actorSystem;
 
+    @Autowired
+    private InnerCacheOperationSource operationSource;
+
     @Override
     public void onApplicationEvent(ContextRefreshedEvent event) {
         // root容器启动完成执行
@@ -109,7 +113,9 @@ public class InitComponent implements ApplicationListener<ContextRefreshedEvent>
                     continue;
                 }
                 // 初始化工作
-                if (innerCacheable.isInit()) {
+                if (innerCacheable.isInit() && innerCacheable.atomicSwap()) {
+                    putDatasetToInnerCache(method, beanObj, innerCacheable);
+                } else if (innerCacheable.isInit()) {
                     if (innerCacheable.initOption().length > 0) {
                         for (InitOption item : innerCacheable.initOption()) {
                             String[] params = item.initParam();
@@ -154,15 +160,10 @@ public class InitComponent implements ApplicationListener<ContextRefreshedEvent>
         try {
             Object result = method.invoke(beanObj, objParam);
             if (result != null) {
-                ExpressionParser parser = new SpelExpressionParser();
-                Class targetClass = beanObj.getClass();
-                CacheExpressionRootObject rootObject = new CacheExpressionRootObject(
-                        method, objParam, beanObj, targetClass);
-                CacheEvaluationContext evaluationContext = new CacheEvaluationContext(
-                        rootObject, AopUtils.getMostSpecificMethod(method, targetClass), objParam, new DefaultParameterNameDiscoverer());
-                String key = parser.parseExpression(innerCacheable.keyName()).getValue(evaluationContext, String.class);
+                InnerCacheOperation operation = operationSource.getOperation(method, AopProxyUtils.ultimateTargetClass(beanObj));
+                String key = operation.getCacheableKeyGenerator().generate(beanObj, objParam);
                 logger.info("InnerCache 初始化缓存key{}", key);
-                innerCacheTemplate.put(key, result, innerCacheable.ttl(), innerCacheable.isVersion());
+                innerCacheTemplate.put(innerCacheable.region(), key, result, innerCacheable.ttl(), innerCacheable.isVersion());
                 innerCacheTemplate.putActorPath(key, innerCacheable.actorBean());
             }
         } catch (IllegalAccessException e) {
@@ -173,6 +174,44 @@ public class InitComponent implements ApplicationListener<ContextRefreshedEvent>
 
     }
 
+    /**
+     * 全部initOption的结果加载成一个数据集后整体发布，并登记加载方法，版本更新时重新加载整个数据集
+     *
+     * @param method
+     * @param beanObj
+     * @param innerCacheable
+     */
+    private void putDatasetToInnerCache(Method method, Object beanObj, InnerCacheable innerCacheable) {
+        InnerCacheOperation operation = operationSource.getOperation(method, AopProxyUtils.ultimateTargetClass(beanObj));
+        List<Object[]> params = new ArrayList<>();
+        if (innerCacheable.initOption().length > 0) {
+            Class[] paramsClass = method.getParameterTypes();
+            for (InitOption item : innerCacheable.initOption()) {
+                String[] initParam = item.initParam();
+                Object[] objParam = new Object[initParam.length];
+                for (int i = 0; i < initParam.length; i++) {
+                    if ("int".equals(paramsClass[i].getName())) {
+                        objParam[i] = Integer.valueOf(initParam[i]);
+                    }
+                }
+                params.add(objParam);
+            }
+        } else {
+            params.add(new Object[]{});
+        }
+        Callable<InitDataset> loader = new DatasetLoader(innerCacheTemplate, method, beanObj, operation, params);
+        innerCacheTemplate.registerDataset(operation.getDatasetName(), loader);
+        try {
+            InitDataset dataset = loader.call();
+            innerCacheTemplate.publishDataset(dataset);
+            for (String key : dataset.keySet()) {
+                innerCacheTemplate.putActorPath(key, innerCacheable.actorBean());
+            }
+        } catch (Exception e) {
+            logger.error("InnerCache 初始化数据集{}出错", operation.getDatasetName(), e);
+        }
+    }
+
     private CtClass changeBeanClass(Object bean) throws Exception {
         Class clazz = bean.getClass();
         ClassPool classPool = ClassPool.getDefault();
@@ -0,0 +1,125 @@
+package cn.fww.icache.spring.interceptor;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.util.ObjectUtils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @description: 缓存key表达式计算，按方法缓存编译后的key生成器，命中时不再解析表达式、不再反射查找方法和参数名
+ * @author: Wen
+ * @date: create in 2018/1/25 16:18
+ */
+public class CacheKeyExpressionEvaluator {
+
+    private final SpelExpressionParser parser;
+
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    private final StandardEvaluationContext shared = new StandardEvaluationContext();
+
+    /**
+     * 绝大多数方法只有一个表达式和一个目标类，直接以方法为key，不用额外分配对象
+     */
+    private final ConcurrentHashMap<Method, CacheKeyGenerator> generatorCache = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<ExpressionKey, CacheKeyGenerator> fallbackCache = new ConcurrentHashMap<>();
+
+    public CacheKeyExpressionEvaluator() {
+        this.parser = new SpelExpressionParser(new SpelParserConfiguration(
+                SpelCompilerMode.MIXED, CacheKeyExpressionEvaluator.class.getClassLoader()));
+        // 提前初始化延迟创建的组件，之后各线程只读共享
+        shared.getPropertyAccessors();
+        shared.getConstructorResolvers();
+        shared.getMethodResolvers();
+        shared.getTypeLocator();
+        shared.getTypeConverter();
+        shared.getTypeComparator();
+        shared.getOperatorOverloader();
+    }
+
+    /**
+     * 生成缓存key
+     *
+     * @param expression
+     * @param method
+     * @param args
+     * @param target
+     * @param targetClass
+     * @return
+     */
+    public String generateKey(String expression, Method method, Object[] args, Object target, Class<?> targetClass) {
+        return getKeyGenerator(expression, method, targetClass).generate(target, args);
+    }
+
+    /**
+     * 获取方法的key生成器
+     *
+     * @param expression
+     * @param method
+     * @param targetClass
+     * @return
+     */
+    public CacheKeyGenerator getKeyGenerator(String expression, Method method, Class<?> targetClass) {
+        CacheKeyGenerator generator = generatorCache.get(method);
+        if (generator != null && generator.matches(expression, targetClass)) {
+            return generator;
+        }
+        ExpressionKey expressionKey = new ExpressionKey(method, targetClass, expression);
+        generator = fallbackCache.get(expressionKey);
+        if (generator == null) {
+            generator = createKeyGenerator(expression, method, targetClass);
+            CacheKeyGenerator existing = fallbackCache.putIfAbsent(expressionKey, generator);
+            if (existing != null) {
+                generator = existing;
+            }
+            generatorCache.putIfAbsent(method, generator);
+        }
+        return generator;
+    }
+
+    private CacheKeyGenerator createKeyGenerator(String expression, Method method, Class<?> targetClass) {
+        Method targetMethod = AopUtils.getMostSpecificMethod(method, targetClass);
+        String[] parameterNames = parameterNameDiscoverer.getParameterNames(targetMethod);
+        return new CacheKeyGenerator(expression, parser.parseExpression(expression), method, targetClass,
+                parameterNames, shared);
+    }
+
+    private static final class ExpressionKey {
+        private final Method method;
+        private final Class<?> targetClass;
+        private final String expression;
+
+        ExpressionKey(Method method, Class<?> targetClass, String expression) {
+            this.method = method;
+            this.targetClass = targetClass;
+            this.expression = expression;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof ExpressionKey)) {
+                return false;
+            }
+            ExpressionKey otherKey = (ExpressionKey) other;
+            return method.equals(otherKey.method)
+                    && ObjectUtils.nullSafeEquals(targetClass, otherKey.targetClass)
+                    && expression.equals(otherKey.expression);
+        }
+
+        @Override
+        public int hashCode() {
+            return (method.hashCode() * 31 + ObjectUtils.nullSafeHashCode(targetClass)) * 31 + expression.hashCode();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package cn.fww.icache.spring.interceptor;
+
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+
+import java.lang.reflect.Method;
+
+/**
+ * @description: 某个方法的缓存key生成器，SpEL表达式只解析一次并交给SpEL编译器编译成字节码
+ * @author: Wen
+ * @date: create in 2018/1/25 15:40
+ */
+public final class CacheKeyGenerator {
+
+    private final String expressionString;
+    private final Expression expression;
+    private final Method method;
+    private final Class<?> targetClass;
+    private final String[] parameterNames;
+    private final EvaluationContext shared;
+
+    CacheKeyGenerator(String expressionString, Expression expression, Method method, Class<?> targetClass,
+                      String[] parameterNames, EvaluationContext shared) {
+        this.expressionString = expressionString;
+        this.expression = expression;
+        this.method = method;
+        this.targetClass = targetClass;
+        this.parameterNames = parameterNames;
+        this.shared = shared;
+    }
+
+    /**
+     * 生成缓存key
+     *
+     * @param target
+     * @param args
+     * @return
+     */
+    public String generate(Object target, Object[] args) {
+        CacheExpressionRootObject rootObject = new CacheExpressionRootObject(method, args, target, targetClass);
+        return expression.getValue(new KeyEvaluationContext(shared, parameterNames, rootObject, args), String.class);
+    }
+
+    boolean matches(String expressionString, Class<?> targetClass) {
+        return this.targetClass == targetClass && this.expressionString.equals(expressionString);
+    }
+
+    public String getExpressionString() {
+        return expressionString;
+    }
+}
@@ -0,0 +1,159 @@
+package cn.fww.icache.spring.interceptor;
+
+import cn.fww.icache.CacheObject;
+import cn.fww.icache.InitDataset;
+import cn.fww.icache.InnerCache;
+import cn.fww.icache.InnerCacheTemplate;
+import cn.fww.icache.NullValue;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * @Description: InnerCacheable/InnerCacheEvict的方法拦截器，注解信息从元数据登记处直接取
+ * @author: Wen
+ * @Date: create in 2018/1/29 14:20
+ */
+@Component
+public class InnerCacheInterceptor implements MethodInterceptor {
+
+    private Logger logger = LoggerFactory.getLogger(InnerCacheInterceptor.class);
+
+    @Autowired
+    private InnerCacheTemplate innerCacheTemplate;
+
+    @Autowired
+    private InnerCacheOperationSource operationSource;
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object target = invocation.getThis();
+        Class<?> targetClass = target != null ? target.getClass() : null;
+        InnerCacheOperation operation = operationSource.getOperation(invocation.getMethod(), targetClass);
+        if (operation == null) {
+            return invocation.proceed();
+        }
+        Object result = operation.isCacheable()
+                ? executeCacheable(invocation, operation, target)
+                : invocation.proceed();
+        if (operation.isEvict()) {
+            executeEvict(invocation, operation, target);
+        }
+        return result;
+    }
+
+    private Object executeCacheable(final MethodInvocation invocation, final InnerCacheOperation operation,
+                                    Object target) throws Throwable {
+        final String key = operation.getCacheableKeyGenerator().generate(target, invocation.getArguments());
+        if (logger.isDebugEnabled()) {
+            logger.debug("{}{}先读取内部缓存key={}", operation.getTargetClass(), operation.getMethod().getName(), key);
+        }
+        String datasetName = operation.getDatasetName();
+        if (datasetName != null) {
+            // 初始化数据集整体替换，读取时无需加锁；版本已更新时后台重新加载，加载完成前继续使用旧数据集
+            InitDataset dataset = innerCacheTemplate.getDataset(datasetName);
+            Object value = dataset != null ? dataset.get(key) : null;
+            if (value != null) {
+                if (!dataset.isCurrent(key)) {
+                    innerCacheTemplate.reloadDataset(datasetName);
+                }
+                return value;
+            }
+        }
+        Object result = innerCacheTemplate.lookup(operation.getRegion(), key);
+        if (result != null) {
+            // 超过刷新时间，或版本已更新正在使用旧值，异步加载新值
+            if ((operation.getRefreshAfter() > 0 || innerCacheTemplate.isStaleWhileRevalidate())
+                    && innerCacheTemplate.needsRefresh(operation.getRegion(), key, operation.getRefreshAfter())) {
+                refresh(invocation, operation, key);
+            }
+            return result == NullValue.INSTANCE ? null : result;
+        }
+        // 同一区域的同一个key只有一个线程回源，其他线程等待它的结果
+        return singleFlight.execute(InnerCache.regionKey(operation.getRegion(), key), new SingleFlight.Loader() {
+            @Override
+            public Object load() throws Throwable {
+                Object cached = innerCacheTemplate.lookup(operation.getRegion(), key);
+                if (cached != null) {
+                    return cached == NullValue.INSTANCE ? null : cached;
+                }
+                return loadAndCache(invocation, operation, key, true);
+            }
+        }, innerCacheTemplate.getLoadWaitTimeout());
+    }
+
+    /**
+     * 数据已超过刷新时间或已过时，异步重新加载一次，当前请求直接返回旧值
+     */
+    private void refresh(MethodInvocation invocation, final InnerCacheOperation operation, final String key) {
+        // 原调用在当前线程返回后不能再执行，异步执行用它的副本
+        final MethodInvocation refreshInvocation = invocation instanceof ProxyMethodInvocation
+                ? ((ProxyMethodInvocation) invocation).invocableClone() : invocation;
+        innerCacheTemplate.refreshAsync(operation.getRegion(), key, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // 与未命中时的回源共用同一个key，不会重复加载
+                    singleFlight.execute(InnerCache.regionKey(operation.getRegion(), key), new SingleFlight.Loader() {
+                        @Override
+                        public Object load() throws Throwable {
+                            return loadAndCache(refreshInvocation, operation, key, false);
+                        }
+                    }, innerCacheTemplate.getLoadWaitTimeout());
+                } catch (Throwable e) {
+                    logger.warn("{}{}刷新内部缓存出错，继续使用旧值。key={}",
+                            operation.getTargetClass(), operation.getMethod().getName(), key, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 执行方法并写入缓存
+     *
+     * @param useL2 是否先查二级缓存，刷新时二级缓存中的数据可能同样旧，直接执行方法
+     */
+    private Object loadAndCache(MethodInvocation invocation, InnerCacheOperation operation, String key,
+                                boolean useL2) throws Throwable {
+        // 带版本号的数据先查二级缓存，其他节点可能已经算过
+        boolean shared = operation.isVersion() && innerCacheTemplate.isL2Enabled();
+        // 版本号在加载前取，写入时使用同一个版本号，加载期间版本被更新时写入的数据会被作废
+        long version = operation.isVersion() ? innerCacheTemplate.resolveVersion(key) : CacheObject.NO_VERSION;
+        if (shared && useL2) {
+            Object cached = innerCacheTemplate.getFromL2(operation.getRegion(), key, version);
+            if (cached != null) {
+                putLocal(key, cached, operation, version);
+                return cached == NullValue.INSTANCE ? null : cached;
+            }
+        }
+        Object value = invocation.proceed();
+        Object cacheValue = value != null ? value : (operation.isCacheNull() ? NullValue.INSTANCE : null);
+        if (cacheValue != null) {
+            putLocal(key, cacheValue, operation, version);
+            if (shared) {
+                innerCacheTemplate.publishToL2(operation.getRegion(), key, version, cacheValue,
+                        cacheValue == NullValue.INSTANCE ? operation.getNullTtl() : operation.getTtl());
+            }
+        }
+        return value;
+    }
+
+    private void putLocal(String key, Object value, InnerCacheOperation operation, long version) {
+        int ttl = value == NullValue.INSTANCE ? operation.getNullTtl() : operation.getTtl();
+        innerCacheTemplate.putVersioned(operation.getRegion(), key, value, ttl, version);
+    }
+
+    private void executeEvict(MethodInvocation invocation, InnerCacheOperation operation, Object target) {
+        String key = operation.getEvictKeyGenerator().generate(target, invocation.getArguments());
+        innerCacheTemplate.remove(key);
+        long version = innerCacheTemplate.updateVersion(key);
+        logger.info("{}{}数据要更新了，缓存将要更新，先把缓存的版本更新。key={},updateVersion={}",
+                operation.getTargetClass(), operation.getMethod().getName(), key, version);
+    }
+}
@@ -0,0 +1,123 @@
+package cn.fww.icache.spring.interceptor;
+
+import cn.fww.icache.annotation.InnerCacheEvict;
+import cn.fww.icache.annotation.InnerCacheable;
+
+import java.lang.reflect.Method;
+
+/**
+ * @description: 方法上缓存注解的元数据，在bean后置处理时解析一次，调用时直接使用
+ * @author: Wen
+ * @date: create in 2018/1/29 10:12
+ */
+public class InnerCacheOperation {
+
+    private final Method method;
+
+    private final Class<?> targetClass;
+
+    private final InnerCacheable cacheable;
+
+    private final CacheKeyGenerator cacheableKeyGenerator;
+
+    private final InnerCacheEvict evict;
+
+    private final CacheKeyGenerator evictKeyGenerator;
+
+    /**
+     * 整体替换的初始化数据集名称，不是数据集时为null
+     */
+    private final String datasetName;
+
+    InnerCacheOperation(Method method, Class<?> targetClass,
+                        InnerCacheable cacheable, CacheKeyGenerator cacheableKeyGenerator,
+                        InnerCacheEvict evict, CacheKeyGenerator evictKeyGenerator) {
+        this.method = method;
+        this.targetClass = targetClass;
+        this.cacheable = cacheable;
+        this.cacheableKeyGenerator = cacheableKeyGenerator;
+        this.evict = evict;
+        this.evictKeyGenerator = evictKeyGenerator;
+        this.datasetName = cacheable != null && cacheable.isInit() && cacheable.atomicSwap()
+                ? datasetName(method, targetClass) : null;
+    }
+
+    /**
+     * 数据集名称：类名#方法名(参数类型)，初始化和拦截器中取到的是同一个名称
+     */
+    private static String datasetName(Method method, Class<?> targetClass) {
+        Class<?> clazz = targetClass != null ? targetClass : method.getDeclaringClass();
+        StringBuilder name = new StringBuilder(clazz.getName()).append('#').append(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                name.append(',');
+            }
+            name.append(parameterTypes[i].getSimpleName());
+        }
+        return name.append(')').toString();
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Class<?> getTargetClass() {
+        return targetClass;
+    }
+
+    public boolean isCacheable() {
+        return cacheable != null;
+    }
+
+    public boolean isEvict() {
+        return evict != null;
+    }
+
+    public InnerCacheable getCacheable() {
+        return cacheable;
+    }
+
+    public CacheKeyGenerator getCacheableKeyGenerator() {
+        return cacheableKeyGenerator;
+    }
+
+    public InnerCacheEvict getEvict() {
+        return evict;
+    }
+
+    public CacheKeyGenerator getEvictKeyGenerator() {
+        return evictKeyGenerator;
+    }
+
+    public int getTtl() {
+        return cacheable.ttl();
+    }
+
+    public String getRegion() {
+        return cacheable.region();
+    }
+
+    /**
+     * @return 不是整体替换的初始化数据集时返回null
+     */
+    public String getDatasetName() {
+        return datasetName;
+    }
+
+    public int getRefreshAfter() {
+        return cacheable.refreshAfter();
+    }
+
+    public boolean isVersion() {
+        return cacheable.isVersion();
+    }
+
+    public boolean isCacheNull() {
+        return cacheable.cacheNull();
+    }
+
+    public int getNullTtl() {
+        return cacheable.nullTtl();
+    }
+}
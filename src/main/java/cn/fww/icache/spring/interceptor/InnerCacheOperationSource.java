@@ -0,0 +1,88 @@
+package cn.fww.icache.spring.interceptor;
+
+import cn.fww.icache.annotation.InnerCacheEvict;
+import cn.fww.icache.annotation.InnerCacheable;
+import org.springframework.core.BridgeMethodResolver;
+import org.springframework.core.MethodClassKey;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @description: 缓存注解元数据登记处，按(目标类, 方法)解析一次注解、key生成器、ttl和版本配置并缓存，
+ * 没有注解的方法也会记住，之后不再反射查找。
+ * @author: Wen
+ * @date: create in 2018/1/29 10:46
+ */
+@Component
+public class InnerCacheOperationSource {
+
+    private static final InnerCacheOperation NONE = new InnerCacheOperation(null, null, null, null, null, null);
+
+    private final ConcurrentHashMap<MethodClassKey, InnerCacheOperation> operationCache = new ConcurrentHashMap<>(1024);
+
+    private final CacheKeyExpressionEvaluator keyEvaluator = new CacheKeyExpressionEvaluator();
+
+    /**
+     * 获取方法的缓存元数据
+     *
+     * @param method
+     * @param targetClass
+     * @return 没有缓存注解时返回null
+     */
+    public InnerCacheOperation getOperation(Method method, Class<?> targetClass) {
+        MethodClassKey cacheKey = new MethodClassKey(method, targetClass);
+        InnerCacheOperation operation = operationCache.get(cacheKey);
+        if (operation == null) {
+            operation = computeOperation(method, targetClass);
+            InnerCacheOperation existing = operationCache.putIfAbsent(cacheKey, operation == null ? NONE : operation);
+            if (existing != null) {
+                operation = existing;
+            }
+        }
+        return operation == NONE ? null : operation;
+    }
+
+    /**
+     * 解析一个类的全部缓存方法
+     *
+     * @param targetClass
+     * @return
+     */
+    public Map<Method, InnerCacheOperation> registerClass(Class<?> targetClass) {
+        Map<Method, InnerCacheOperation> operations = new LinkedHashMap<>();
+        for (Method method : ReflectionUtils.getUniqueDeclaredMethods(targetClass)) {
+            InnerCacheOperation operation = getOperation(method, targetClass);
+            if (operation != null) {
+                operations.put(method, operation);
+            }
+        }
+        return operations;
+    }
+
+    private InnerCacheOperation computeOperation(Method method, Class<?> targetClass) {
+        if (!Modifier.isPublic(method.getModifiers()) || method.getDeclaringClass() == Object.class) {
+            return null;
+        }
+        Method specificMethod = ClassUtils.getMostSpecificMethod(method, targetClass);
+        specificMethod = BridgeMethodResolver.findBridgedMethod(specificMethod);
+        InnerCacheable cacheable = AnnotationUtils.findAnnotation(specificMethod, InnerCacheable.class);
+        InnerCacheEvict evict = AnnotationUtils.findAnnotation(specificMethod, InnerCacheEvict.class);
+        if (cacheable == null && evict == null) {
+            return null;
+        }
+        Class<?> keyTargetClass = targetClass != null ? targetClass : method.getDeclaringClass();
+        CacheKeyGenerator cacheableKeyGenerator = cacheable == null ? null
+                : keyEvaluator.getKeyGenerator(cacheable.keyName(), method, keyTargetClass);
+        CacheKeyGenerator evictKeyGenerator = evict == null ? null
+                : keyEvaluator.getKeyGenerator(evict.keyName(), method, keyTargetClass);
+        return new InnerCacheOperation(method, targetClass, cacheable, cacheableKeyGenerator, evict, evictKeyGenerator);
+    }
+}
@@ -0,0 +1,48 @@
+package cn.fww.icache.spring.interceptor;
+
+import org.aopalliance.aop.Advice;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.support.AbstractPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+
+/**
+ * @Description: 缓存注解的切面，只对登记处里有缓存元数据的方法织入拦截器
+ * @author: Wen
+ * @Date: create in 2018/1/29 15:05
+ */
+@Component
+public class InnerCachePointcutAdvisor extends AbstractPointcutAdvisor {
+
+    private static final long serialVersionUID = -6187317734016297402L;
+
+    @Autowired
+    private transient InnerCacheOperationSource operationSource;
+
+    @Autowired
+    private transient InnerCacheInterceptor innerCacheInterceptor;
+
+    private final Pointcut pointcut = new StaticMethodMatcherPointcut() {
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return operationSource.getOperation(method, targetClass) != null;
+        }
+    };
+
+    public InnerCachePointcutAdvisor() {
+        setOrder(0);
+    }
+
+    @Override
+    public Pointcut getPointcut() {
+        return pointcut;
+    }
+
+    @Override
+    public Advice getAdvice() {
+        return innerCacheInterceptor;
+    }
+}
@@ -0,0 +1,115 @@
+package cn.fww.icache.spring.interceptor;
+
+import org.springframework.expression.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @description: 生成缓存key用的轻量计算上下文。参数名在方法元数据里只解析一次，
+ * 解析器、类型转换等无状态组件共用一个上下文，每次调用只保存根对象和参数。
+ * @author: Wen
+ * @date: create in 2018/1/25 15:02
+ */
+class KeyEvaluationContext implements EvaluationContext {
+
+    private final EvaluationContext shared;
+    private final String[] parameterNames;
+    private final Object[] args;
+    private final TypedValue rootObject;
+    private Map<String, Object> variables;
+
+    KeyEvaluationContext(EvaluationContext shared, String[] parameterNames, Object rootObject, Object[] args) {
+        this.shared = shared;
+        this.parameterNames = parameterNames;
+        this.args = args;
+        this.rootObject = new TypedValue(rootObject);
+    }
+
+    @Override
+    public TypedValue getRootObject() {
+        return rootObject;
+    }
+
+    @Override
+    public void setVariable(String name, Object value) {
+        if (variables == null) {
+            variables = new HashMap<>();
+        }
+        variables.put(name, value);
+    }
+
+    /**
+     * 依次查找显式设置的变量、参数名、#p0/#a0形式的参数下标
+     */
+    @Override
+    public Object lookupVariable(String name) {
+        if (variables != null && variables.containsKey(name)) {
+            return variables.get(name);
+        }
+        if (args == null) {
+            return null;
+        }
+        if (parameterNames != null) {
+            for (int i = 0; i < parameterNames.length && i < args.length; i++) {
+                if (name.equals(parameterNames[i])) {
+                    return args[i];
+                }
+            }
+        }
+        int length = name.length();
+        if (length > 1 && (name.charAt(0) == 'p' || name.charAt(0) == 'a')) {
+            int index = 0;
+            for (int i = 1; i < length; i++) {
+                char c = name.charAt(i);
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+                index = index * 10 + (c - '0');
+            }
+            return index < args.length ? args[index] : null;
+        }
+        return null;
+    }
+
+    @Override
+    public List<PropertyAccessor> getPropertyAccessors() {
+        return shared.getPropertyAccessors();
+    }
+
+    @Override
+    public List<ConstructorResolver> getConstructorResolvers() {
+        return shared.getConstructorResolvers();
+    }
+
+    @Override
+    public List<MethodResolver> getMethodResolvers() {
+        return shared.getMethodResolvers();
+    }
+
+    @Override
+    public BeanResolver getBeanResolver() {
+        return shared.getBeanResolver();
+    }
+
+    @Override
+    public TypeLocator getTypeLocator() {
+        return shared.getTypeLocator();
+    }
+
+    @Override
+    public TypeConverter getTypeConverter() {
+        return shared.getTypeConverter();
+    }
+
+    @Override
+    public TypeComparator getTypeComparator() {
+        return shared.getTypeComparator();
+    }
+
+    @Override
+    public OperatorOverloader getOperatorOverloader() {
+        return shared.getOperatorOverloader();
+    }
+}
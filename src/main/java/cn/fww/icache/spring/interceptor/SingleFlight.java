@@ -0,0 +1,71 @@
+package cn.fww.icache.spring.interceptor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description: 按key合并并发加载。同一个key同时只有一个线程执行加载，其他线程等待它的结果，
+ * 加载抛出的异常同样抛给所有等待者；等待超时的线程自行加载。
+ * @author: Wen
+ * @date: create in 2018/1/22 10:35
+ */
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, Call> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 执行加载
+     *
+     * @param key
+     * @param loader
+     * @param waitTimeout 等待其他线程加载的超时时间(毫秒)
+     * @return
+     * @throws Throwable
+     */
+    public Object execute(String key, Loader loader, long waitTimeout) throws Throwable {
+        Call call = new Call();
+        Call existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            if (!existing.latch.await(waitTimeout, TimeUnit.MILLISECONDS)) {
+                return loader.load();
+            }
+            if (existing.error != null) {
+                throw existing.error;
+            }
+            return existing.value;
+        }
+        try {
+            call.value = loader.load();
+        } catch (Throwable t) {
+            call.error = t;
+        } finally {
+            // 无论成功失败都要移除，避免后续请求一直等待
+            inFlight.remove(key, call);
+            call.latch.countDown();
+        }
+        if (call.error != null) {
+            throw call.error;
+        }
+        return call.value;
+    }
+
+    /**
+     * 正在加载的key数量
+     *
+     * @return
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    public interface Loader {
+        Object load() throws Throwable;
+    }
+
+    private static final class Call {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private Object value;
+        private Throwable error;
+    }
+}
@@ -0,0 +1,53 @@
+package cn.fww.icache;
+
+import cn.fww.icache.codec.BinaryCodec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @description: 本地缓存快照：同一个快照文件同一时间只能被一个使用方锁定
+ * @author: Wen
+ * @date: create in 2018/2/19 17:10
+ */
+public class CacheSnapshotTest {
+
+    private File directory;
+
+    private CacheSnapshot first;
+
+    private CacheSnapshot second;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("icache-snapshot-test").toFile();
+        File file = new File(directory, "icache.snapshot");
+        first = new CacheSnapshot(new BinaryCodec(), file);
+        second = new CacheSnapshot(new BinaryCodec(), file);
+    }
+
+    @After
+    public void tearDown() {
+        first.close();
+        second.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void lockedSnapshotIsRejected() throws Exception {
+        assertTrue(first.tryLock());
+        assertFalse(second.tryLock());
+
+        first.close();
+        assertTrue(second.tryLock());
+    }
+}
@@ -0,0 +1,58 @@
+package cn.fww.icache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @description: 默认权重估算：相互引用的对象图不重复遍历，共享的对象只计算一次
+ * @author: Wen
+ * @date: create in 2018/2/19 18:30
+ */
+public class DefaultWeigherTest {
+
+    private final DefaultWeigher weigher = new DefaultWeigher();
+
+    @Test(timeout = 2000)
+    public void backReferencesDoNotExplode() {
+        // 每个节点都引用全部节点，逐层展开时是64的8次方
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            nodes.add(new Node("node-" + i));
+        }
+        for (Node node : nodes) {
+            node.parent = nodes.get(0);
+            node.siblings = nodes;
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(weigher.weigh("key", nodes.get(0)) > 0);
+        }
+    }
+
+    @Test
+    public void sharedObjectIsCountedOnce() {
+        List<String> shared = new ArrayList<>();
+        List<String> distinct = new ArrayList<>();
+        String value = new String(new char[1000]);
+        for (int i = 0; i < 64; i++) {
+            shared.add(value);
+            distinct.add(new String(new char[1000]));
+        }
+
+        assertTrue(weigher.weigh("key", shared) < weigher.weigh("key", distinct) / 10);
+    }
+
+    private static final class Node {
+        final String name;
+        Node parent;
+        List<Node> siblings;
+
+        Node(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package cn.fww.icache;
+
+import cn.fww.icache.codec.BinaryCodec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * @description: 磁盘溢出层：删除后不会被之前排队的淘汰数据复活，目录同一时间只能被一个实例使用
+ * @author: Wen
+ * @date: create in 2018/2/19 16:20
+ */
+public class DiskStoreTest {
+
+    private File directory;
+
+    private DiskStore diskStore;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("icache-disk-test").toFile();
+        diskStore = new DiskStore(new BinaryCodec(), directory, 1 << 20, 64 * 1024, 0.5d, 60000);
+        diskStore.bind(new ConcurrentHashMap<String, CacheObject>());
+    }
+
+    @After
+    public void tearDown() {
+        diskStore.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void evictedEntryIsReadBack() {
+        diskStore.onEviction(entry("k", "v"));
+        diskStore.flush();
+
+        assertEquals("v", diskStore.get("k").getObj());
+    }
+
+    @Test
+    public void removeCancelsQueuedSpill() {
+        diskStore.onEviction(entry("k", "v"));
+        diskStore.remove("k");
+        diskStore.flush();
+
+        assertNull(diskStore.get("k"));
+        assertEquals(0, diskStore.getEntryCount());
+    }
+
+    @Test
+    public void removeAfterFlushDropsEntry() {
+        diskStore.onEviction(entry("k", "v"));
+        diskStore.flush();
+        diskStore.remove("k");
+        diskStore.flush();
+
+        assertNull(diskStore.get("k"));
+    }
+
+    @Test
+    public void latestEvictionWins() {
+        diskStore.onEviction(entry("k", "old"));
+        diskStore.onEviction(entry("k", "new"));
+        diskStore.flush();
+
+        assertEquals("new", diskStore.get("k").getObj());
+        assertEquals(1, diskStore.getSpillCount());
+    }
+
+    @Test
+    public void directoryInUseIsRejected() throws Exception {
+        try {
+            new DiskStore(new BinaryCodec(), directory, 1 << 20, 64 * 1024, 0.5d, 60000);
+            fail("目录正被使用时应该失败");
+        } catch (IOException expected) {
+        }
+
+        diskStore.close();
+        diskStore = new DiskStore(new BinaryCodec(), directory, 1 << 20, 64 * 1024, 0.5d, 60000);
+    }
+
+    private static CacheObject entry(String key, Object value) {
+        CacheObject cacheObject = new CacheObject();
+        cacheObject.key = key;
+        cacheObject.setObj(value);
+        cacheObject.setExpireTime(-1);
+        return cacheObject;
+    }
+}
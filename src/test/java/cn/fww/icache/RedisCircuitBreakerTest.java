@@ -0,0 +1,39 @@
+package cn.fww.icache;
+
+import cn.fww.icache.support.InProcessStringRedisTemplate;
+import cn.fww.icache.support.OfflineInnerCacheTemplate;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @description: redis熔断只统计redis异常，慢的调用和大的扫描不会触发熔断
+ * @author: Wen
+ * @date: create in 2018/2/19 11:30
+ */
+public class RedisCircuitBreakerTest {
+
+    @Test
+    public void slowCallsDoNotOpenBreaker() throws Exception {
+        InProcessStringRedisTemplate redisTemplate = new InProcessStringRedisTemplate();
+        redisTemplate.setRoundTripMicros(20000);
+        // 熔断器在第一次调用redis时创建，先设置好参数
+        InnerCacheTemplate template = new OfflineInnerCacheTemplate();
+        template.setStringRedisTemplate(redisTemplate);
+        template.setActorSystem(OfflineInnerCacheTemplate.actorSystem());
+        template.setCacheVersionNamespace(OfflineInnerCacheTemplate.VERSION_NAMESPACE);
+        template.setRedisMaxFailures(1);
+        template.setRedisCallTimeout(5);
+
+        template.loadVersionToRedis();
+
+        template.getAllVersion();
+        template.getChangedVersion();
+        template.isExistRedisCache("breaker:key");
+        // 熔断器在回调线程里统计结果，稍等后再调用，熔断时这里会直接失败
+        Thread.sleep(200);
+        template.getAllVersion();
+
+        assertTrue(template.isRedisAvailable());
+    }
+}
@@ -0,0 +1,109 @@
+package cn.fww.icache.actor.schedule;
+
+import akka.actor.ActorRef;
+import akka.actor.Inbox;
+import akka.actor.PoisonPill;
+import akka.actor.Props;
+import akka.actor.Terminated;
+import akka.japi.Creator;
+import cn.fww.icache.InnerCacheTemplate;
+import cn.fww.icache.actor.eume.ActorCommand;
+import cn.fww.icache.support.InProcessStringRedisTemplate;
+import cn.fww.icache.support.OfflineInnerCacheTemplate;
+import org.junit.Before;
+import org.junit.Test;
+import scala.concurrent.duration.Duration;
+
+import java.lang.reflect.Field;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @description: 定时版本检查只让本地版本号前进：扫描redis之后推送已把版本号更新得更新时，不会被扫描结果改回旧版本
+ * @author: Wen
+ * @date: create in 2018/2/20 14:10
+ */
+public class CheckCacheVersionActorTest {
+
+    private InProcessStringRedisTemplate redisTemplate;
+
+    private InnerCacheTemplate template;
+
+    private String key;
+
+    @Before
+    public void setUp() {
+        redisTemplate = new InProcessStringRedisTemplate();
+        template = OfflineInnerCacheTemplate.create(redisTemplate, OfflineInnerCacheTemplate.VERSION_NAMESPACE);
+        // 缓存数据是进程内全局的，每个用例使用不同的key
+        key = "check:" + UUID.randomUUID();
+        template.put(key, "v1", true);
+        template.flushVersionRegistration();
+    }
+
+    @Test
+    public void pushDuringScanIsNotRolledBack() throws Exception {
+        final long scanned = incrementInRedis();
+        // HSCAN已经返回scanned，推送的更新版本在使用扫描结果之前到达
+        redisTemplate.setAfterScan(new Runnable() {
+            @Override
+            public void run() {
+                redisTemplate.setAfterScan(null);
+                template.advanceVersion(key, incrementInRedis());
+            }
+        });
+
+        runCheck();
+
+        assertEquals(scanned + 1, template.resolveVersion(key));
+        template.put(key, "v3", true);
+        assertEquals("v3", template.get(key));
+    }
+
+    @Test
+    public void newerRedisVersionIsApplied() throws Exception {
+        long version = incrementInRedis();
+
+        runCheck();
+
+        assertEquals(version, template.resolveVersion(key));
+        assertEquals(null, template.get(key));
+    }
+
+    private long incrementInRedis() {
+        return redisTemplate.opsForHash().increment(OfflineInnerCacheTemplate.VERSION_NAMESPACE, key, 1L);
+    }
+
+    /**
+     * 执行一次检查，等actor处理完后返回
+     */
+    private void runCheck() throws Exception {
+        ActorRef actor = OfflineInnerCacheTemplate.actorSystem().actorOf(Props.create(new ActorCreator(template)));
+        Inbox inbox = Inbox.create(OfflineInnerCacheTemplate.actorSystem());
+        inbox.watch(actor);
+        inbox.send(actor, ActorCommand.START);
+        inbox.send(actor, PoisonPill.getInstance());
+        assertTrue(inbox.receive(Duration.create(5, TimeUnit.SECONDS)) instanceof Terminated);
+    }
+
+    private static class ActorCreator implements Creator<CheckCacheVersionActor> {
+
+        private final InnerCacheTemplate template;
+
+        ActorCreator(InnerCacheTemplate template) {
+            this.template = template;
+        }
+
+        @Override
+        public CheckCacheVersionActor create() throws Exception {
+            CheckCacheVersionActor actor = new CheckCacheVersionActor();
+            Field field = CheckCacheVersionActor.class.getDeclaredField("innerCacheTemplate");
+            field.setAccessible(true);
+            field.set(actor, template);
+            return actor;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package cn.fww.icache.codec;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @description: 损坏的数据和节点间类结构不一致时，解码只抛出CodecException；同一类型不能注册为两个编号
+ * @author: Wen
+ * @date: create in 2018/2/19 14:40
+ */
+public class BinaryCodecTest {
+
+    @Test
+    public void schemaChangeIsReportedAsCodecException() {
+        byte[] data = new BinaryCodec().register(OrderV1.class, 1).encode(new OrderV1("A-1", 3));
+        BinaryCodec newNode = new BinaryCodec().register(OrderV2.class, 1);
+        try {
+            newNode.decode(data, 0, data.length);
+            fail();
+        } catch (CodecException e) {
+            // 字段类型已变化
+        }
+    }
+
+    @Test
+    public void reRegistrationUnderAnotherIdIsRejected() {
+        BinaryCodec codec = new BinaryCodec().register(OrderV1.class, 1).register(OrderV1.class, 1);
+        try {
+            codec.register(OrderV1.class, 2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // 已用编号1注册
+        }
+        try {
+            codec.register(OrderV2.class, 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // 编号1已被使用
+        }
+        // 失败的注册不影响原有编号
+        byte[] data = codec.register(OrderV2.class, 2).encode(new OrderV1("A-1", 3));
+        assertEquals(OrderV1.class, new BinaryCodec().register(OrderV1.class, 1).decode(data, 0, data.length).getClass());
+    }
+
+    @Test
+    public void corruptDataOnlyThrowsCodecException() {
+        BinaryCodec codec = new BinaryCodec().register(OrderV1.class, 1);
+        Map<String, Object> value = new HashMap<>();
+        List<Object> orders = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            orders.add(new OrderV1("A-" + i, i));
+        }
+        value.put("orders", orders);
+        value.put("name", "icache");
+        byte[] data = codec.encode(value);
+        assertEquals(value.get("name"), ((Map<?, ?>) codec.decode(data, 0, data.length)).get("name"));
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            byte[] corrupt = data.clone();
+            for (int j = 0; j < 3; j++) {
+                corrupt[1 + random.nextInt(corrupt.length - 1)] = (byte) random.nextInt();
+            }
+            int length = 1 + random.nextInt(corrupt.length);
+            try {
+                codec.decode(corrupt, 0, length);
+            } catch (CodecException e) {
+                // 预期内的解码失败
+            }
+        }
+    }
+
+    public static class OrderV1 {
+        private String code;
+        private int count;
+
+        public OrderV1() {
+        }
+
+        OrderV1(String code, int count) {
+            this.code = code;
+            this.count = count;
+        }
+    }
+
+    public static class OrderV2 {
+        private Integer code;
+        private int count;
+    }
+}
@@ -0,0 +1,32 @@
+package cn.fww.icache.redis;
+
+import org.junit.Test;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @description: 版本号存储的桶和摘要在redis集群的同一个slot，自增脚本不会因跨slot失败
+ * @author: Wen
+ * @date: create in 2018/2/20 10:30
+ */
+public class RedisVersionStoreTest {
+
+    @Test
+    public void bucketsAndDigestShareSlot() {
+        for (String namespace : new String[]{"icache:version", "app:{orders}:version"}) {
+            for (int bucketCount : new int[]{1, 16}) {
+                RedisVersionStore store = new RedisVersionStore(null, namespace, bucketCount, 10, 1000);
+                int slot = ClusterSlotHashUtil.calculateSlot(store.getDigestKey());
+                for (int i = 0; i < bucketCount; i++) {
+                    assertEquals(namespace + "/" + bucketCount, slot, ClusterSlotHashUtil.calculateSlot(store.bucketKey(i)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void singleBucketKeepsLegacyKey() {
+        assertEquals("icache:version", new RedisVersionStore(null, "icache:version", 1, 10, 1000).bucketKey(0));
+    }
+}
@@ -0,0 +1,121 @@
+package cn.fww.icache.redis;
+
+import cn.fww.icache.InnerCacheTemplate;
+import cn.fww.icache.support.InProcessStringRedisTemplate;
+import cn.fww.icache.support.OfflineInnerCacheTemplate;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @description: 版本更新推送：updateVersion发布消息，VersionMessageListener解析消息并作废旧版本缓存，
+ * 乱序或重复的旧版本号被忽略。使用进程内redis替身
+ * @author: Wen
+ * @date: create in 2018/2/19 10:10
+ */
+public class VersionPushTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private InProcessStringRedisTemplate redisTemplate;
+
+    private InnerCacheTemplate template;
+
+    private VersionMessageListener listener;
+
+    private String key;
+
+    @Before
+    public void setUp() throws Exception {
+        redisTemplate = new InProcessStringRedisTemplate();
+        template = OfflineInnerCacheTemplate.create(redisTemplate, OfflineInnerCacheTemplate.VERSION_NAMESPACE);
+        template.afterPropertiesSet();
+        listener = new VersionMessageListener(template);
+        // 缓存数据是进程内全局的，每个用例使用不同的key
+        key = "push:" + UUID.randomUUID();
+    }
+
+    @Test
+    public void updateVersionPublishesNewVersion() {
+        final List<String> bodies = new CopyOnWriteArrayList<>();
+        redisTemplate.addMessageListener(new MessageListener() {
+            @Override
+            public void onMessage(Message message, byte[] pattern) {
+                bodies.add(new String(message.getBody(), UTF_8));
+            }
+        }, template.getVersionChannel());
+        template.put(key, "value", true);
+        // 与登记actor一样先把默认版本号写到redis
+        template.flushVersionRegistration();
+
+        long version = template.updateVersion(key);
+
+        assertEquals(1, bodies.size());
+        assertEquals(VersionMessageListener.encode(key, version), bodies.get(0));
+        assertEquals(version, template.resolveVersion(key));
+        assertNull(template.get(key));
+    }
+
+    @Test
+    public void publishedMessageInvalidatesEntry() {
+        redisTemplate.addMessageListener(listener, template.getVersionChannel());
+        template.put(key, "value", true);
+        long version = template.resolveVersion(key);
+
+        redisTemplate.convertAndSend(template.getVersionChannel(), VersionMessageListener.encode(key, version + 1));
+
+        assertNull(template.get(key));
+        assertEquals(version + 1, template.resolveVersion(key));
+    }
+
+    @Test
+    public void staleAndOutOfOrderVersionsAreIgnored() {
+        template.put(key, "old", true);
+        long version = template.resolveVersion(key);
+        listener.onMessage(message(VersionMessageListener.encode(key, version + 2)), null);
+        assertNull(template.get(key));
+
+        template.put(key, "new", true);
+        // 晚到的中间版本和重复的版本都不比本地新
+        listener.onMessage(message(VersionMessageListener.encode(key, version + 1)), null);
+        listener.onMessage(message(VersionMessageListener.encode(key, version + 2)), null);
+        listener.onMessage(message(VersionMessageListener.encode(key, version)), null);
+
+        assertEquals("new", template.get(key));
+        assertEquals(version + 2, template.resolveVersion(key));
+    }
+
+    @Test
+    public void malformedMessageIsIgnored() {
+        template.put(key, "value", true);
+        long version = template.resolveVersion(key);
+
+        listener.onMessage(message(key), null);
+        listener.onMessage(message("x|" + key), null);
+
+        assertEquals("value", template.get(key));
+        assertEquals(version, template.resolveVersion(key));
+    }
+
+    @Test
+    public void untrackedKeyIsIgnored() {
+        listener.onMessage(message(VersionMessageListener.encode(key, 5)), null);
+
+        // 本地没有记录的key不登记推送来的版本号，首次使用时仍按默认版本号
+        assertEquals(1L, template.resolveVersion(key));
+    }
+
+    private static Message message(String body) {
+        return new DefaultMessage("channel".getBytes(UTF_8), body.getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,134 @@
+package cn.fww.icache.spring.init;
+
+import cn.fww.icache.InitDataset;
+import cn.fww.icache.InnerCacheTemplate;
+import cn.fww.icache.annotation.InitOption;
+import cn.fww.icache.annotation.InnerCacheable;
+import cn.fww.icache.spring.InnerCacheBeanPostProcessor;
+import cn.fww.icache.spring.SpringExt;
+import cn.fww.icache.spring.interceptor.InnerCacheInterceptor;
+import cn.fww.icache.spring.interceptor.InnerCacheOperation;
+import cn.fww.icache.spring.interceptor.InnerCacheOperationSource;
+import cn.fww.icache.spring.interceptor.InnerCachePointcutAdvisor;
+import cn.fww.icache.support.OfflineInnerCacheTemplate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.autoproxy.DefaultAdvisorAutoProxyCreator;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @description: 初始化数据集加载：绕过拦截器调用目标方法，版本更新后重新加载的数据集是新加载的值，
+ * 加载时不写入缓存区域
+ * @author: Wen
+ * @date: create in 2018/2/19 20:40
+ */
+public class DatasetLoaderTest {
+
+    private AnnotationConfigApplicationContext context;
+
+    private InnerCacheTemplate template;
+
+    private DatasetService service;
+
+    private DatasetLoader loader;
+
+    @Before
+    public void setUp() throws Exception {
+        context = new AnnotationConfigApplicationContext(DatasetConfig.class);
+        template = context.getBean(InnerCacheTemplate.class);
+        service = context.getBean(DatasetService.class);
+        assertTrue(AopUtils.isAopProxy(service));
+
+        Method method = DatasetService.class.getMethod("find", int.class);
+        InnerCacheOperation operation = context.getBean(InnerCacheOperationSource.class)
+                .getOperation(method, DatasetService.class);
+        List<Object[]> params = new ArrayList<>();
+        params.add(new Object[]{1});
+        params.add(new Object[]{2});
+        loader = new DatasetLoader(template, method, service, operation, params);
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    public void reloadAfterVersionBumpHoldsNewValues() throws Exception {
+        InitDataset first = loader.call();
+        template.publishDataset(first);
+        assertEquals("1@1", first.get("dataset:1"));
+        assertEquals("1@2", service.find(2));
+
+        service.setGeneration(2);
+        template.advanceVersion("dataset:1", template.resolveVersion("dataset:1") + 1);
+        assertTrue(!first.isCurrent("dataset:1"));
+        InitDataset second = loader.call();
+
+        assertEquals("2@1", second.get("dataset:1"));
+        assertEquals("2@2", second.get("dataset:2"));
+        assertTrue(second.isCurrent("dataset:1"));
+    }
+
+    @Test
+    public void loadingDoesNotFillRegion() throws Exception {
+        InitDataset dataset = loader.call();
+
+        assertEquals(2, dataset.size());
+        assertNull(template.get("dataset:1"));
+        assertNull(template.get("dataset:2"));
+    }
+
+    public static class DatasetService {
+        private volatile int generation = 1;
+
+        @InnerCacheable(keyName = "'dataset:' + #p0", isInit = true, atomicSwap = true, isVersion = true,
+                initOption = {@InitOption(initParam = "1"), @InitOption(initParam = "2")})
+        public String find(int id) {
+            return generation + "@" + id;
+        }
+
+        public void setGeneration(int generation) {
+            this.generation = generation;
+        }
+    }
+
+    @Configuration
+    @Import({SpringExt.class, InnerCacheOperationSource.class, InnerCacheInterceptor.class,
+            InnerCachePointcutAdvisor.class})
+    public static class DatasetConfig {
+
+        @Bean
+        public static DefaultAdvisorAutoProxyCreator advisorAutoProxyCreator() {
+            return new DefaultAdvisorAutoProxyCreator();
+        }
+
+        @Bean
+        public static InnerCacheBeanPostProcessor innerCacheBeanPostProcessor() {
+            return new InnerCacheBeanPostProcessor();
+        }
+
+        @Bean
+        public InnerCacheTemplate innerCacheTemplate() {
+            return OfflineInnerCacheTemplate.create();
+        }
+
+        @Bean
+        public DatasetService datasetService() {
+            return new DatasetService();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package cn.fww.icache.spring.interceptor;
+
+import cn.fww.icache.InnerCacheTemplate;
+import cn.fww.icache.annotation.InnerCacheable;
+import cn.fww.icache.spring.InnerCacheBeanPostProcessor;
+import cn.fww.icache.spring.SpringExt;
+import cn.fww.icache.support.OfflineInnerCacheTemplate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.autoproxy.DefaultAdvisorAutoProxyCreator;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @description: 不同区域的同名key各自回源，不会拿到另一个方法的加载结果
+ * @author: Wen
+ * @date: create in 2018/2/20 16:40
+ */
+public class InnerCacheInterceptorTest {
+
+    private AnnotationConfigApplicationContext context;
+
+    private RegionService service;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext(InterceptorConfig.class);
+        service = context.getBean(RegionService.class);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        service.release();
+        executor.shutdownNow();
+        context.close();
+    }
+
+    @Test
+    public void sameKeyInOtherRegionLoadsSeparately() throws Exception {
+        // 缓存数据是进程内全局的，每个用例使用不同的key
+        final String id = UUID.randomUUID().toString();
+        Future<String> name = executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return service.name(id);
+            }
+        });
+        assertTrue(service.awaitStarted());
+
+        // name还在加载，count不能等它的结果
+        Future<Integer> count = executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return service.count(id);
+            }
+        });
+        assertEquals(Integer.valueOf(42), count.get(1, TimeUnit.SECONDS));
+
+        service.release();
+        assertEquals("name:" + id, name.get(5, TimeUnit.SECONDS));
+    }
+
+    public static class RegionService {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @InnerCacheable(keyName = "'same:' + #p0", region = "names")
+        public String name(String id) {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "name:" + id;
+        }
+
+        @InnerCacheable(keyName = "'same:' + #p0", region = "counts")
+        public Integer count(String id) {
+            return 42;
+        }
+
+        public boolean awaitStarted() throws InterruptedException {
+            return started.await(5, TimeUnit.SECONDS);
+        }
+
+        public void release() {
+            release.countDown();
+        }
+    }
+
+    @Configuration
+    @Import({SpringExt.class, InnerCacheOperationSource.class, InnerCacheInterceptor.class,
+            InnerCachePointcutAdvisor.class})
+    public static class InterceptorConfig {
+
+        @Bean
+        public static DefaultAdvisorAutoProxyCreator advisorAutoProxyCreator() {
+            return new DefaultAdvisorAutoProxyCreator();
+        }
+
+        @Bean
+        public static InnerCacheBeanPostProcessor innerCacheBeanPostProcessor() {
+            return new InnerCacheBeanPostProcessor();
+        }
+
+        @Bean
+        public InnerCacheTemplate innerCacheTemplate() {
+            return OfflineInnerCacheTemplate.create();
+        }
+
+        @Bean
+        public RegionService regionService() {
+            return new RegionService();
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package cn.fww.icache.support;
+
+import cn.fww.icache.redis.RedisVersionStore;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @description: 进程内的redis替身，只实现缓存用到的hash、key和发布订阅操作，让测试和基准测试不依赖外部redis
+ * @author: Wen
+ * @date: create in 2018/2/1 10:18
+ */
+public class InProcessStringRedisTemplate extends StringRedisTemplate {
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<Object, Object>> hashes = new ConcurrentHashMap<>();
+
+    private final InProcessHashOperations hashOperations = new InProcessHashOperations();
+
+    /**
+     * 字符串类型的数据，值为原始字节
+     */
+    private final ConcurrentHashMap<String, byte[]> values = new ConcurrentHashMap<>();
+
+    private final RedisConnection connection = (RedisConnection) Proxy.newProxyInstance(
+            RedisConnection.class.getClassLoader(), new Class<?>[]{RedisConnection.class}, new InProcessConnection());
+
+    private final ConcurrentHashMap<String, List<MessageListener>> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * 管道中的命令结果，管道外为null
+     */
+    private final ThreadLocal<List<Object>> pipeline = new ThreadLocal<>();
+
+    private final AtomicLong roundTrips = new AtomicLong();
+
+    /**
+     * 模拟的网络往返耗时
+     */
+    private volatile long roundTripNanos;
+
+    /**
+     * HSCAN取完数据后执行，模拟扫描与使用扫描结果之间发生的变更
+     */
+    private volatile Runnable afterScan;
+
+    /**
+     * 设置模拟的网络往返耗时，每次往返(管道算一次)都会等待这么久
+     *
+     * @param roundTripMicros
+     */
+    public void setRoundTripMicros(long roundTripMicros) {
+        this.roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+    }
+
+    /**
+     * 设置HSCAN取完数据后执行的操作，null为不执行
+     *
+     * @param afterScan
+     */
+    public void setAfterScan(Runnable afterScan) {
+        this.afterScan = afterScan;
+    }
+
+    /**
+     * 到目前为止的往返次数
+     *
+     * @return
+     */
+    public long getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <HK, HV> HashOperations<String, HK, HV> opsForHash() {
+        return (HashOperations<String, HK, HV>) (HashOperations) hashOperations;
+    }
+
+    @Override
+    public Boolean hasKey(String key) {
+        Boolean exists = hashes.containsKey(key);
+        if (pipeline.get() != null) {
+            return pipelined(exists);
+        }
+        roundTrip();
+        return exists;
+    }
+
+    /**
+     * 直接操作连接的回调只支持GET、MGET、PSETEX(不处理过期)和DEL
+     */
+    @Override
+    public <T> T execute(RedisCallback<T> action, boolean exposeConnection, boolean pipeline) {
+        roundTrip();
+        return action.doInRedis(connection);
+    }
+
+    @Override
+    public List<Object> executePipelined(SessionCallback<?> session) {
+        List<Object> results = new ArrayList<>();
+        pipeline.set(results);
+        try {
+            session.execute(this);
+        } finally {
+            pipeline.remove();
+        }
+        roundTrip();
+        return results;
+    }
+
+    private void roundTrip() {
+        roundTrips.incrementAndGet();
+        long nanos = roundTripNanos;
+        if (nanos > 0) {
+            long deadline = System.nanoTime() + nanos;
+            while (System.nanoTime() - deadline < 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * 只支持版本号自增脚本，在替身里按脚本语义执行
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+        if (script != RedisVersionStore.INCREMENT_SCRIPT) {
+            throw new UnsupportedOperationException(script.getScriptAsString());
+        }
+        synchronized (hashOperations) {
+            Long version = hashOperations.increment(keys.get(0), args[0], 1L);
+            hashOperations.increment(keys.get(1), args[1], 1L);
+            return (T) version;
+        }
+    }
+
+    /**
+     * 订阅频道，发布的消息在发布线程里同步投递
+     *
+     * @param listener
+     * @param channel
+     */
+    public void addMessageListener(MessageListener listener, String channel) {
+        List<MessageListener> channelListeners = listeners.get(channel);
+        if (channelListeners == null) {
+            channelListeners = new CopyOnWriteArrayList<>();
+            List<MessageListener> existing = listeners.putIfAbsent(channel, channelListeners);
+            if (existing != null) {
+                channelListeners = existing;
+            }
+        }
+        channelListeners.add(listener);
+    }
+
+    @Override
+    public void convertAndSend(String channel, Object message) {
+        List<MessageListener> channelListeners = listeners.get(channel);
+        if (channelListeners == null) {
+            return;
+        }
+        Charset charset = Charset.forName("UTF-8");
+        DefaultMessage defaultMessage = new DefaultMessage(channel.getBytes(charset), message.toString().getBytes(charset));
+        for (MessageListener listener : channelListeners) {
+            listener.onMessage(defaultMessage, null);
+        }
+    }
+
+    /**
+     * 管道中的命令记录结果并返回null，与真实的管道一致
+     */
+    private <T> T pipelined(T result) {
+        List<Object> results = pipeline.get();
+        if (results != null) {
+            results.add(result);
+            return null;
+        }
+        return result;
+    }
+
+    private ConcurrentHashMap<Object, Object> hash(String key) {
+        ConcurrentHashMap<Object, Object> hash = hashes.get(key);
+        if (hash == null) {
+            hash = new ConcurrentHashMap<>();
+            ConcurrentHashMap<Object, Object> existing = hashes.putIfAbsent(key, hash);
+            if (existing != null) {
+                hash = existing;
+            }
+        }
+        return hash;
+    }
+
+    private class InProcessHashOperations implements HashOperations<String, Object, Object> {
+
+        @Override
+        public Long delete(String key, Object... hashKeys) {
+            long count = 0;
+            for (Object hashKey : hashKeys) {
+                if (hash(key).remove(hashKey) != null) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public Boolean hasKey(String key, Object hashKey) {
+            return hash(key).containsKey(hashKey);
+        }
+
+        @Override
+        public Object get(String key, Object hashKey) {
+            return pipelined(hash(key).get(hashKey));
+        }
+
+        @Override
+        public List<Object> multiGet(String key, Collection<Object> hashKeys) {
+            List<Object> values = new ArrayList<>(hashKeys.size());
+            for (Object hashKey : hashKeys) {
+                values.add(hash(key).get(hashKey));
+            }
+            return values;
+        }
+
+        @Override
+        public synchronized Long increment(String key, Object hashKey, long delta) {
+            Object value = hash(key).get(hashKey);
+            long result = (value == null ? 0 : Long.parseLong(value.toString())) + delta;
+            hash(key).put(hashKey, String.valueOf(result));
+            return result;
+        }
+
+        @Override
+        public synchronized Double increment(String key, Object hashKey, double delta) {
+            Object value = hash(key).get(hashKey);
+            double result = (value == null ? 0 : Double.parseDouble(value.toString())) + delta;
+            hash(key).put(hashKey, String.valueOf(result));
+            return result;
+        }
+
+        @Override
+        public Set<Object> keys(String key) {
+            return new LinkedHashSet<>(hash(key).keySet());
+        }
+
+        @Override
+        public Long size(String key) {
+            return (long) hash(key).size();
+        }
+
+        @Override
+        public void putAll(String key, Map<?, ?> m) {
+            hash(key).putAll(m);
+        }
+
+        @Override
+        public void put(String key, Object hashKey, Object value) {
+            hash(key).put(hashKey, value);
+        }
+
+        @Override
+        public Boolean putIfAbsent(String key, Object hashKey, Object value) {
+            return pipelined(hash(key).putIfAbsent(hashKey, value) == null);
+        }
+
+        @Override
+        public List<Object> values(String key) {
+            return new ArrayList<>(hash(key).values());
+        }
+
+        @Override
+        public Map<Object, Object> entries(String key) {
+            roundTrip();
+            return new LinkedHashMap<>(hash(key));
+        }
+
+        @Override
+        public Cursor<Map.Entry<Object, Object>> scan(String key, ScanOptions options) {
+            List<Map.Entry<Object, Object>> entries = new ArrayList<Map.Entry<Object, Object>>(hash(key).entrySet());
+            long count = options.getCount() != null ? options.getCount() : 10;
+            roundTrip();
+            Runnable hook = afterScan;
+            if (hook != null) {
+                hook.run();
+            }
+            return new InProcessCursor<>(entries, count);
+        }
+
+        @Override
+        public RedisOperations<String, ?> getOperations() {
+            return InProcessStringRedisTemplate.this;
+        }
+    }
+
+    private class InProcessConnection implements InvocationHandler {
+
+        private final Charset charset = Charset.forName("UTF-8");
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "get":
+                    return values.get(new String((byte[]) args[0], charset));
+                case "mGet":
+                    List<byte[]> result = new ArrayList<>();
+                    for (byte[] key : (byte[][]) args[0]) {
+                        result.add(values.get(new String(key, charset)));
+                    }
+                    return result;
+                case "pSetEx":
+                    values.put(new String((byte[]) args[0], charset), (byte[]) args[2]);
+                    return null;
+                case "del":
+                    long count = 0;
+                    for (byte[] key : (byte[][]) args[0]) {
+                        if (values.remove(new String(key, charset)) != null) {
+                            count++;
+                        }
+                    }
+                    return count;
+                case "close":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+
+    /**
+     * 对快照分页遍历，每读一页算一次往返
+     */
+    private class InProcessCursor<T> implements Cursor<T> {
+
+        private final List<T> entries;
+        private final long pageSize;
+        private int position;
+        private boolean closed;
+
+        InProcessCursor(List<T> entries, long pageSize) {
+            this.entries = entries;
+            this.pageSize = Math.max(1, pageSize);
+        }
+
+        @Override
+        public long getCursorId() {
+            return position < entries.size() ? position : 0;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public Cursor<T> open() {
+            return this;
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < entries.size();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (position > 0 && position % pageSize == 0) {
+                roundTrip();
+            }
+            return entries.get(position++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+}
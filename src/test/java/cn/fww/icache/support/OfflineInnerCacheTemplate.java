@@ -0,0 +1,62 @@
+package cn.fww.icache.support;
+
+import akka.actor.ActorSystem;
+import cn.fww.icache.InnerCacheTemplate;
+import com.typesafe.config.ConfigFactory;
+
+/**
+ * @description: 不启动akka调度任务的模板，配合进程内redis替身使用，测试和基准测试共用
+ * @author: Wen
+ * @date: create in 2018/2/1 11:40
+ */
+public class OfflineInnerCacheTemplate extends InnerCacheTemplate {
+
+    public static final String VERSION_NAMESPACE = "icache:test:version";
+
+    /**
+     * 熔断器需要akka的调度器，线程设为守护线程，不影响测试进程退出
+     */
+    private static final ActorSystem ACTOR_SYSTEM = ActorSystem.create("offline",
+            ConfigFactory.parseString("akka.daemonic = on").withFallback(ConfigFactory.load()));
+
+    /**
+     * 守护线程的ActorSystem，自行设置模板时使用
+     *
+     * @return
+     */
+    public static ActorSystem actorSystem() {
+        return ACTOR_SYSTEM;
+    }
+
+    /**
+     * 使用新的进程内redis替身的模板
+     *
+     * @return
+     */
+    public static OfflineInnerCacheTemplate create() {
+        return create(new InProcessStringRedisTemplate(), VERSION_NAMESPACE);
+    }
+
+    /**
+     * 使用指定redis替身和版本命名空间的模板，已加载版本号
+     *
+     * @param redisTemplate
+     * @param namespace
+     * @return
+     */
+    public static OfflineInnerCacheTemplate create(InProcessStringRedisTemplate redisTemplate, String namespace) {
+        OfflineInnerCacheTemplate template = new OfflineInnerCacheTemplate();
+        template.setStringRedisTemplate(redisTemplate);
+        template.setActorSystem(ACTOR_SYSTEM);
+        template.setCacheVersionNamespace(namespace);
+        template.loadVersionToRedis();
+        return template;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        initStorage();
+        loadVersionToRedis();
+        loadSnapshot();
+    }
+}